@@ -0,0 +1,27 @@
+package com.dvc.OTAction.config;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+
+/**
+ * Sits on the client outbound channel, where the broker has already fanned a message out into one copy
+ * per subscriber, and drops the copy that would go back to the websocket session the op came from.
+ * The author learns about its own op from the ACK instead.
+ *
+ * The origin travels as a plain message header (not a STOMP native header), so it never reaches clients.
+ */
+public class EchoSuppressionInterceptor implements ChannelInterceptor {
+
+    public static final String ORIGIN_SESSION_HEADER = "otOriginSession";
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        Object origin = message.getHeaders().get(ORIGIN_SESSION_HEADER);
+        if (origin != null && origin.equals(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()))) {
+            return null;
+        }
+        return message;
+    }
+}
@@ -0,0 +1,62 @@
+package com.dvc.OTAction.controller;
+
+import com.dvc.OTAction.service.AdmissionControl;
+import com.dvc.OTAction.service.DocumentLoadTracker;
+import com.dvc.OTAction.service.HotDocumentExecutor;
+import com.dvc.OTAction.service.PersistencePipeline;
+import com.dvc.OTAction.service.WarmStartService;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@CrossOrigin(origins = "*")
+public class AdminController {
+    private final DocumentLoadTracker loadTracker;
+    private final PersistencePipeline pipeline;
+    private final AdmissionControl admissionControl;
+    private final WarmStartService warmStartService;
+    private final HotDocumentExecutor hotDocumentExecutor;
+
+    public AdminController(DocumentLoadTracker loadTracker, PersistencePipeline pipeline, AdmissionControl admissionControl,
+                           WarmStartService warmStartService, HotDocumentExecutor hotDocumentExecutor) {
+        this.loadTracker = loadTracker;
+        this.pipeline = pipeline;
+        this.admissionControl = admissionControl;
+        this.warmStartService = warmStartService;
+        this.hotDocumentExecutor = hotDocumentExecutor;
+    }
+
+    @GetMapping("/admin/documents")
+    public Map<String, Object> documents() {
+        Map<String, Object> mp = new HashMap<>();
+        mp.put("documents", loadTracker.getDocumentLoads());
+        mp.put("modeSwitches", loadTracker.getSwitchEvents());
+        mp.put("hotQueues", hotDocumentExecutor.getQueueCount());
+        return mp;
+    }
+
+    @GetMapping("/admin/pipeline")
+    public Map<String, Object> pipeline() {
+        Map<String, Object> mp = new HashMap<>();
+        mp.put("pending", pipeline.getPendingCount());
+        mp.put("delayed", pipeline.getDelayedCount());
+        mp.put("rejected", pipeline.getRejectedCount());
+        mp.put("retried", pipeline.getRetriedCount());
+        mp.put("failed", pipeline.getFailedCount());
+        return mp;
+    }
+
+    @GetMapping("/admin/admission")
+    public Map<String, Object> admission() {
+        return admissionControl.getMetrics();
+    }
+
+    @GetMapping("/admin/startup")
+    public Map<String, Object> startup() {
+        return warmStartService.getStatus();
+    }
+}
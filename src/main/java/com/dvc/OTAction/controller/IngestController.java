@@ -0,0 +1,77 @@
+package com.dvc.OTAction.controller;
+
+import com.dvc.OTAction.dto.TextIngestPayload;
+import com.dvc.OTAction.service.AdmissionControl;
+import com.dvc.OTAction.service.TextIngestService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+@RestController
+@CrossOrigin(origins = "*")
+public class IngestController {
+    private static final Logger logger = Logger.getLogger(IngestController.class.getName());
+    private final TextIngestService ingestService;
+    private final AdmissionControl admissionControl;
+
+    public IngestController(TextIngestService ingestService, AdmissionControl admissionControl) {
+        this.ingestService = ingestService;
+        this.admissionControl = admissionControl;
+    }
+
+    // full new text from an external tool, applied as a minimal op on top of `revision`.
+    // Goes through the same client / document buckets as /app/operation: 429 with Retry-After when over them
+    @PostMapping("/ot/ingest")
+    public ResponseEntity<Object> ingest(@RequestBody TextIngestPayload payload) {
+        if (payload.getDocumentId() == null || payload.getSessionId() == null) {
+            throw new IllegalArgumentException("Ingest needs a sessionId and documentId");
+        }
+        logger.info("Ingest received: " + payload);
+        String clientId = payload.getClientId() == null ? "ingest" : payload.getClientId();
+        AdmissionControl.Decision decision = admissionControl.tryAdmit(payload.getSessionId(), payload.getDocumentId(), clientId);
+        if (!decision.isAdmitted()) {
+            return tooManyRequests(decision.getRejectedFor().name(), decision.getRetryAfterMillis());
+        }
+        try {
+            return ResponseEntity.ok(ingestService.ingest(payload.getSessionId(), payload.getDocumentId(), payload.getRevision(),
+                    payload.getContent(), clientId));
+        } finally {
+            admissionControl.complete(payload.getSessionId(), payload.getDocumentId());
+        }
+    }
+
+    // 429 if the op can be resent as is (persistence queue full), 400 if it never will apply (bad revision, too long)
+    @ExceptionHandler(RuntimeException.class)
+    public ResponseEntity<Object> failed(RuntimeException e) {
+        if (AdmissionControl.isRetryable(e)) {
+            return tooManyRequests(AdmissionControl.Reason.QUEUE_FULL.name(), AdmissionControl.QUEUE_FULL_RETRY_MILLIS);
+        }
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof IllegalArgumentException) {
+                Map<String, Object> mp = new HashMap<>();
+                mp.put("reason","REJECTED");
+                mp.put("error",t.getMessage());
+                return ResponseEntity.badRequest().body(mp);
+            }
+        }
+        throw e;
+    }
+
+    private ResponseEntity<Object> tooManyRequests(String reason, long retryAfterMillis) {
+        Map<String, Object> mp = new HashMap<>();
+        mp.put("reason",reason);
+        mp.put("retryAfterMs",retryAfterMillis);
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf((retryAfterMillis + 999) / 1000))
+                .body(mp);
+    }
+}
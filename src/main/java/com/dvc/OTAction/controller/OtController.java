@@ -1,28 +1,42 @@
 package com.dvc.OTAction.controller;
+import com.dvc.OTAction.dto.AppliedOperation;
 import com.dvc.OTAction.dto.TextOperation;
+import com.dvc.OTAction.service.AdmissionControl;
+import com.dvc.OTAction.service.DocumentLoadTracker;
+import com.dvc.OTAction.service.HotDocumentExecutor;
+import com.dvc.OTAction.service.OperationBroadcaster;
 import com.dvc.OTAction.service.OtService;
+import com.dvc.OTAction.service.PresenceService;
 import org.slf4j.LoggerFactory;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 import com.codecafe.backend.dto.IncomingOperationPayload;
 import java.security.Principal;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 @Controller
 public class OtController {
     private static final org.slf4j.Logger log = LoggerFactory.getLogger(OtController.class);
     private final OtService otService;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final PresenceService presenceService;
+    private final DocumentLoadTracker loadTracker;
+    private final HotDocumentExecutor hotDocumentExecutor;
+    private final OperationBroadcaster broadcaster;
+    private final AdmissionControl admissionControl;
     private static final Logger logger = Logger.getLogger(OtController.class.getName());
-    public OtController(OtService otService, SimpMessagingTemplate messagingTemplate) {
+    public OtController(OtService otService, PresenceService presenceService, DocumentLoadTracker loadTracker,
+                        HotDocumentExecutor hotDocumentExecutor, OperationBroadcaster broadcaster,
+                        AdmissionControl admissionControl) {
         this.otService = otService;
-        this.messagingTemplate = messagingTemplate;
+        this.presenceService = presenceService;
+        this.loadTracker = loadTracker;
+        this.hotDocumentExecutor = hotDocumentExecutor;
+        this.broadcaster = broadcaster;
+        this.admissionControl = admissionControl;
     }
 
     @MessageMapping("/operation")
@@ -34,33 +48,87 @@ public class OtController {
 
         if(clientId == null || documentId == null || sessionId ==null){
             logger.warning("Received payload with no clientId,documentId,sessionId");
+            if (clientId != null) {
+                broadcaster.refuse(sessionId, documentId, clientId, payload.getRevision(),
+                        "An operation needs a clientId, documentId and sessionId");
+            }
+            return;
         }
         logger.info(String.format("OtController received operation payload from client [%s] for session [%s], doc [%s]: %s",
                 clientId, sessionId, documentId, payload.toString()));
 
+        String socketSessionId = headerAccessor.getSessionId();
+        AdmissionControl.Decision decision = admissionControl.tryAdmit(sessionId, documentId, clientId);
+        if (!decision.isAdmitted()) {
+            logger.fine(String.format("Rejected operation from client [%s] for doc [%s]: %s",
+                    clientId, documentId, decision.getRejectedFor()));
+            broadcaster.reject(sessionId, documentId, clientId, payload.getRevision(),
+                    decision.getRejectedFor().name(), decision.getRetryAfterMillis());
+            return;
+        }
+        if (decision.isSlowDown()) {
+            broadcaster.slowDown(sessionId, documentId, clientId);
+        }
+        boolean queuedForLater = false;
         try{
+            // inside the try: whatever fails here must still give the admission slot back
+            loadTracker.recordOperation(sessionId, documentId, clientId,
+                    otService.getServerRevision(sessionId, documentId) - payload.getRevision());
             TextOperation operation = new TextOperation(payload.getOperation());
-            TextOperation transformedOp = otService.receiveOperation(sessionId,documentId,payload.getRevision(),operation,clientId);
-            // broadCastMessage
-            ConcurrentHashMap<String,Object> broadcastPayLoad = new ConcurrentHashMap<>();
-            broadcastPayLoad.put("documentId",documentId);
-            broadcastPayLoad.put("clientId",clientId);
-            broadcastPayLoad.put("operation",transformedOp.getOps());
-            broadcastPayLoad.put("sessionId",sessionId);
-            if (payload.getCursorPosition() != null) {
-                broadcastPayLoad.put("cursorPosition", payload.getCursorPosition());
+            Supplier<AppliedOperation> work =
+                    () -> otService.receiveOperation(sessionId,documentId,payload.getRevision(),operation,clientId);
+            Consumer<AppliedOperation> queuedApplied = applied -> {
+                admissionControl.complete(sessionId, documentId);
+                onApplied(payload, applied, socketSessionId);
+            };
+            Consumer<Exception> queuedFailed = e -> {
+                admissionControl.complete(sessionId, documentId);
+                onFailed(payload, e);
+            };
+            if (loadTracker.isHot(sessionId, documentId)) {
+                hotDocumentExecutor.submit(sessionId, documentId, work, queuedApplied, queuedFailed);
+                queuedForLater = true;
+                return;
+            }
+            // just cooled down: ops still queued run first
+            if (hotDocumentExecutor.submitIfQueued(sessionId, documentId, work, queuedApplied, queuedFailed)) {
+                queuedForLater = true;
+                return;
             }
-            String allDestinations = "/topic/sessions";
-            messagingTemplate.convertAndSend(allDestinations,broadcastPayLoad);
-            String ackDestination = "/topic/ack/" + clientId;
-            Map<String,String> mp = new HashMap<>();
-            mp.put("ACK","ack");
-            messagingTemplate.convertAndSend(ackDestination,mp);
-            logger.fine("Sent ACK to client [" + clientId + "] at " + ackDestination);
+            AppliedOperation applied = otService.receiveOperation(sessionId,documentId,payload.getRevision(),operation,clientId);
+            onApplied(payload, applied, socketSessionId);
         }catch (Exception e){
-            logger.warning(e.getMessage());
+            onFailed(payload, e);
+        } finally {
+            if (!queuedForLater) {
+                admissionControl.complete(sessionId, documentId);
+            }
+        }
+
+    }
+
+    private void onFailed(IncomingOperationPayload payload, Exception e) {
+        logger.warning(e.getMessage());
+        if (AdmissionControl.isRetryable(e)) {
+            broadcaster.reject(payload.getSessionId(), payload.getDocumentId(), payload.getClientId(),
+                    payload.getRevision(), AdmissionControl.Reason.QUEUE_FULL.name(), AdmissionControl.QUEUE_FULL_RETRY_MILLIS);
+        } else {
+            broadcaster.refuse(payload.getSessionId(), payload.getDocumentId(), payload.getClientId(),
+                    payload.getRevision(), e.getMessage());
         }
+    }
 
+    private void onApplied(IncomingOperationPayload payload, AppliedOperation applied, String socketSessionId) {
+        String clientId = payload.getClientId();
+        String documentId = payload.getDocumentId();
+        String sessionId = payload.getSessionId();
+        broadcaster.broadcastPulled(sessionId, documentId, applied.getPulledOperations());
+        broadcaster.broadcast(sessionId, documentId, clientId, applied, socketSessionId);
+        broadcaster.acknowledge(sessionId, documentId, clientId, applied);
+        if (payload.getCursorPosition() != null || payload.getSelection() != null) {
+            presenceService.update(sessionId, documentId, clientId, applied,
+                    payload.getCursorPosition(), payload.getSelection(), socketSessionId);
+        }
     }
 
 }
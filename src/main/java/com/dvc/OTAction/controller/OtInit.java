@@ -1,12 +1,25 @@
 package com.dvc.OTAction.controller;
 
+import com.dvc.OTAction.dto.ContentRange;
+import com.dvc.OTAction.dto.VersionedContent;
+import com.dvc.OTAction.dto.VersionedText;
 import com.dvc.OTAction.service.OtService;
+import com.dvc.OTAction.utils.ChunkedText;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -15,14 +28,80 @@ import java.util.Map;
 public class OtInit {
     @Autowired
     private OtService otService;
+    @Autowired
+    private ObjectMapper objectMapper;
 
     @GetMapping("/ot/init")
     public Map<String, Object> init(@RequestParam String sessionId,@RequestParam String documentId){
         Map<String, Object> mp = new HashMap<>();
-        String currentContent = otService.getContent(sessionId, documentId);
-        int revision = otService.getServerRevision(sessionId,documentId);
-        mp.put("content",currentContent);
-        mp.put("revision",revision);
+        VersionedContent document = otService.getDocument(sessionId, documentId);
+        mp.put("content",document.getContent());
+        mp.put("revision",document.getRevision());
+        mp.put("checksum",document.getChecksum());
+        return mp;
+    }
+
+    // same as /ot/init, but sent as newline delimited JSON: a header line, then one line per chunk of the document,
+    // so a large document is never turned into one big string
+    @GetMapping(value = "/ot/init/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> initStream(@RequestParam String sessionId,@RequestParam String documentId){
+        VersionedText document = otService.getText(sessionId, documentId);
+        ChunkedText text = document.getText();
+        StreamingResponseBody body = out -> {
+            Map<String, Object> header = new HashMap<>();
+            header.put("revision",document.getRevision());
+            header.put("checksum",text.checksum());
+            header.put("length",text.length());
+            header.put("lines",text.lineCount());
+            writeLine(out, header);
+            int offset = 0;
+            for (String chunk : text.chunks()) {
+                Map<String, Object> mp = new HashMap<>();
+                mp.put("offset",offset);
+                mp.put("content",chunk);
+                writeLine(out, mp);
+                offset += chunk.length();
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType("application/x-ndjson")).body(body);
+    }
+
+    // part of the head document by character offset, e.g. the region a viewer scrolled to
+    @GetMapping("/ot/range")
+    public ContentRange range(@RequestParam String sessionId,@RequestParam String documentId,
+                              @RequestParam int offset,@RequestParam int length){
+        return otService.getRange(sessionId, documentId, offset, length);
+    }
+
+    // part of the head document by (0 based) line numbers
+    @GetMapping("/ot/lines")
+    public ContentRange lines(@RequestParam String sessionId,@RequestParam String documentId,
+                              @RequestParam int from,@RequestParam int count){
+        return otService.getLines(sessionId, documentId, from, count);
+    }
+
+    private void writeLine(OutputStream out, Map<String, Object> line) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(line));
+        out.write('\n');
+    }
+
+    // "view as of": the document at an older revision, rebuilt from the nearest checkpoint
+    @GetMapping("/ot/content")
+    public Map<String, Object> contentAt(@RequestParam String sessionId,@RequestParam String documentId,@RequestParam int revision){
+        Map<String, Object> mp = new HashMap<>();
+        VersionedContent document = otService.getContentAt(sessionId, documentId, revision);
+        mp.put("content",document.getContent());
+        mp.put("revision",document.getRevision());
+        mp.put("checksum",document.getChecksum());
+        return mp;
+    }
+
+    // revision, range or line outside the document
+    @ExceptionHandler(IllegalArgumentException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public Map<String, Object> invalidRequest(IllegalArgumentException e){
+        Map<String, Object> mp = new HashMap<>();
+        mp.put("error",e.getMessage());
         return mp;
     }
 }
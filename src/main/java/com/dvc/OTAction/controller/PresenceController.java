@@ -0,0 +1,30 @@
+package com.dvc.OTAction.controller;
+
+import com.dvc.OTAction.dto.PresencePayload;
+import com.dvc.OTAction.service.PresenceService;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Controller;
+
+import java.util.logging.Logger;
+
+@Controller
+public class PresenceController {
+    private static final Logger logger = Logger.getLogger(PresenceController.class.getName());
+    private final PresenceService presenceService;
+
+    public PresenceController(PresenceService presenceService) {
+        this.presenceService = presenceService;
+    }
+
+    @MessageMapping("/presence")
+    public void handlePresence(@Payload PresencePayload payload, SimpMessageHeaderAccessor headerAccessor) {
+        if (payload.getClientId() == null || payload.getDocumentId() == null || payload.getSessionId() == null) {
+            logger.warning("Received presence with no clientId,documentId,sessionId");
+            return;
+        }
+        presenceService.update(payload.getSessionId(), payload.getDocumentId(), payload.getClientId(),
+                payload.getRevision(), payload.getCursorPosition(), payload.getSelection(), headerAccessor.getSessionId());
+    }
+}
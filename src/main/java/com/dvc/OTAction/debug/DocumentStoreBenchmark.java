@@ -0,0 +1,161 @@
+package com.dvc.OTAction.debug;
+
+import com.dvc.OTAction.store.DocumentSnapshot;
+import com.dvc.OTAction.store.DocumentStore;
+import com.dvc.OTAction.store.InMemoryDocumentStore;
+import com.dvc.OTAction.store.RedisDocumentStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append / save / load throughput of InMemoryDocumentStore vs RedisDocumentStore.
+ *
+ * Appends are issued the way PersistencePipeline issues them: every document's ops in revision order,
+ * different documents from different threads at the same time. Against Redis that is where pipelining
+ * shows up, so the round trips per append are printed too.
+ *
+ * Without a host the Redis store talks to an InProcessRespServer, once as is and once with every reply
+ * held back for replyDelayMicros to stand in for a network round trip. That measures the client side and
+ * the protocol but not a real Redis; pass host:port to run against one instead (use a throwaway instance,
+ * keys go under "otbench:").
+ *
+ * threads defaults to 4, the default of ot.pipeline.threads (the appending threads in production); pass the
+ * configured count when it differs.
+ *
+ * Usage: DocumentStoreBenchmark [documents] [opsPerDocument] [threads] [replyDelayMicros | host:port]
+ */
+public class DocumentStoreBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int documents = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int opsPerDocument = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        String target = args.length > 3 ? args[3] : "200";
+
+        System.out.printf("%d documents x %d ops, %d threads%n", documents, opsPerDocument, threads);
+        run("memory", new InMemoryDocumentStore(), documents, opsPerDocument, threads);
+
+        if (target.contains(":")) {
+            String host = target.substring(0, target.lastIndexOf(':'));
+            int port = Integer.parseInt(target.substring(target.lastIndexOf(':') + 1));
+            compare(target, host, port, documents, opsPerDocument, threads);
+            return;
+        }
+        for (long replyDelayMicros : new long[]{0, Long.parseLong(target)}) {
+            try (InProcessRespServer standIn = new InProcessRespServer(0, replyDelayMicros)) {
+                compare("stand-in, +" + replyDelayMicros + "us", "127.0.0.1", standIn.getPort(), documents, opsPerDocument, threads);
+            }
+        }
+    }
+
+    /**
+     * One thread (every append is its own round trip) vs all threads (appends of different documents share them).
+     */
+    private static void compare(String name, String host, int port, int documents, int opsPerDocument, int threads) throws Exception {
+        String prefix = "otbench:" + System.nanoTime() + ":";
+        RedisDocumentStore single = new RedisDocumentStore(host, port, 5000, prefix + "single:", 256);
+        try {
+            run("redis (" + name + "), 1 thread", single, documents, opsPerDocument, 1);
+            printRoundTrips(single);
+        } finally {
+            single.close();
+        }
+        RedisDocumentStore pipelined = new RedisDocumentStore(host, port, 5000, prefix + "pipelined:", 256);
+        try {
+            run("redis (" + name + "), " + threads + " threads", pipelined, documents, opsPerDocument, threads);
+            printRoundTrips(pipelined);
+        } finally {
+            pipelined.close();
+        }
+    }
+
+    private static void run(String name, DocumentStore store, int documents, int opsPerDocument, int threads) throws Exception {
+        List<String> operations = randomOperations(opsPerDocument);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            // warm up the JIT (and the connection) on documents that are not measured
+            forEachDocument(executor, Math.min(threads, documents), d -> {
+                for (int rev = 1; rev <= Math.min(200, opsPerDocument); rev++) {
+                    store.appendOperation("warmup", "doc-" + d, rev, operations.get(rev - 1));
+                }
+            });
+
+            long start = System.nanoTime();
+            forEachDocument(executor, documents, d -> {
+                for (int rev = 1; rev <= opsPerDocument; rev++) {
+                    store.appendOperation("bench", "doc-" + d, rev, operations.get(rev - 1));
+                }
+            });
+            long appendNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            forEachDocument(executor, documents, d ->
+                    store.save(new DocumentSnapshot("bench", "doc-" + d, opsPerDocument, "x".repeat(4096), operations)));
+            long saveNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            forEachDocument(executor, documents, d -> {
+                DocumentSnapshot snapshot = store.load("bench", "doc-" + d).orElseThrow();
+                List<String> tail = store.readOperations("bench", "doc-" + d, snapshot.getRevision());
+                if (snapshot.getHistory().size() + tail.size() != opsPerDocument) {
+                    throw new IllegalStateException("doc-" + d + " came back with " + snapshot.getHistory().size() + " ops");
+                }
+            });
+            long loadNanos = System.nanoTime() - start;
+
+            long appends = (long) documents * opsPerDocument;
+            System.out.printf("%-40s append %,10.0f ops/s   save %,8.0f docs/s   load %,8.0f docs/s%n", name,
+                    perSecond(appends, appendNanos), perSecond(documents, saveNanos), perSecond(documents, loadNanos));
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private static void printRoundTrips(RedisDocumentStore store) {
+        System.out.printf("%-40s %,d appends in %,d round trips (%.1f per round trip)%n", "",
+                store.getAppendCount(), store.getAppendRoundTripCount(),
+                (double) store.getAppendCount() / Math.max(1, store.getAppendRoundTripCount()));
+    }
+
+    private static void forEachDocument(ExecutorService executor, int documents, DocumentTask task) throws Exception {
+        List<Future<?>> futures = new ArrayList<>(documents);
+        for (int d = 0; d < documents; d++) {
+            int document = d;
+            futures.add(executor.submit(() -> {
+                task.run(document);
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+    private static List<String> randomOperations(int count) {
+        // the shape of typical keystroke ops: retain, a few characters, retain
+        SplittableRandom random = new SplittableRandom(42);
+        List<String> operations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int before = random.nextInt(4096);
+            operations.add(random.nextBoolean()
+                    ? "[" + before + ",\"" + "abc".substring(random.nextInt(3)) + "\"," + (4096 - before) + "]"
+                    : "[" + before + ",-1," + (4095 - before) + "]");
+        }
+        return operations;
+    }
+
+    private static double perSecond(long count, long nanos) {
+        return count * 1e9 / Math.max(1, nanos);
+    }
+
+    private interface DocumentTask {
+        void run(int document) throws Exception;
+    }
+}
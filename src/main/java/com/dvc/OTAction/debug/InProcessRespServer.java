@@ -0,0 +1,428 @@
+package com.dvc.OTAction.debug;
+
+import com.dvc.OTAction.store.RedisDocumentStore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * A tiny Redis stand-in on a local port, so RedisDocumentStore can be tested and benchmarked without a Redis.
+ *
+ * Speaks RESP2 and knows exactly the commands the store uses: PING, LLEN, LINDEX, LRANGE, RPUSH, HGET, HMGET,
+ * HSET, ZADD, ZREVRANGE, DEL, FLUSHALL, SCRIPT LOAD / FLUSH, EVAL and EVALSHA. There is no Lua: the store's scripts
+ * are registered by their SHA1 and run as Java equivalents. Like Redis, every command (and script) runs
+ * under one global lock, so scripts are atomic.
+ *
+ * Loopback round trips are far shorter than any real network's; replyDelayMicros holds every reply (or
+ * pipeline of replies) back for that long, so benchmarks can show what pipelining saves at a realistic latency.
+ *
+ * Usage: InProcessRespServer [port] [replyDelayMicros]   (runs until killed, port 0 picks a free one)
+ */
+public class InProcessRespServer implements AutoCloseable {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final ServerSocket serverSocket;
+    private final Map<String, Object> keyspace = new HashMap<>();
+    // every script the server knows, by SHA1; only the loaded ones can be called with EVALSHA
+    private final Map<String, Function<ScriptCall, Object>> knownScripts = new HashMap<>();
+    private final Set<String> loadedScripts = ConcurrentHashMap.newKeySet();
+    private final Set<Socket> clients = ConcurrentHashMap.newKeySet();
+    private final long replyDelayNanos;
+    private volatile boolean closed;
+
+    public InProcessRespServer(int port) throws IOException {
+        this(port, 0);
+    }
+
+    public InProcessRespServer(int port, long replyDelayMicros) throws IOException {
+        this.replyDelayNanos = TimeUnit.MICROSECONDS.toNanos(replyDelayMicros);
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        knownScripts.put(sha1(RedisDocumentStore.APPEND_SCRIPT), this::compareAndAppend);
+        knownScripts.put(sha1(RedisDocumentStore.SNAPSHOT_SCRIPT), this::writeSnapshotIfNewer);
+        Thread acceptor = new Thread(this::acceptLoop, "resp-standin-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Forgets all loaded scripts, like SCRIPT FLUSH on a real server.
+     */
+    public void flushScripts() {
+        loadedScripts.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Socket client : clients) {
+            client.close();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket client = serverSocket.accept();
+                client.setTcpNoDelay(true);
+                clients.add(client);
+                Thread handler = new Thread(() -> serve(client), "resp-standin-client");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("RESP stand-in stopped accepting: " + e.getMessage());
+                }
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket client) {
+        try (client) {
+            InputStream in = new BufferedInputStream(client.getInputStream(), 64 * 1024);
+            OutputStream out = new BufferedOutputStream(client.getOutputStream(), 64 * 1024);
+            List<String> command;
+            while ((command = readCommand(in)) != null) {
+                Object reply;
+                synchronized (keyspace) {
+                    reply = execute(command);
+                }
+                writeReply(out, reply);
+                // answer a whole pipeline with one write, like Redis does
+                if (in.available() == 0) {
+                    if (replyDelayNanos > 0) {
+                        LockSupport.parkNanos(replyDelayNanos);
+                    }
+                    out.flush();
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            // client went away
+        } finally {
+            clients.remove(client);
+        }
+    }
+
+    private Object execute(List<String> command) {
+        String name = command.get(0).toUpperCase();
+        try {
+            switch (name) {
+                case "PING":
+                    return new Status("PONG");
+                case "LLEN":
+                    return (long) list(command.get(1), false).size();
+                case "LINDEX": {
+                    List<String> list = list(command.get(1), false);
+                    int index = Integer.parseInt(command.get(2));
+                    index = index < 0 ? list.size() + index : index;
+                    return index >= 0 && index < list.size() ? list.get(index) : null;
+                }
+                case "LRANGE": {
+                    List<String> list = list(command.get(1), false);
+                    int[] range = range(list.size(), Integer.parseInt(command.get(2)), Integer.parseInt(command.get(3)));
+                    return new ArrayList<Object>(list.subList(range[0], range[1]));
+                }
+                case "RPUSH": {
+                    List<String> list = list(command.get(1), true);
+                    list.addAll(command.subList(2, command.size()));
+                    return (long) list.size();
+                }
+                case "HGET":
+                    return hash(command.get(1), false).get(command.get(2));
+                case "HMGET": {
+                    Map<String, String> hash = hash(command.get(1), false);
+                    List<Object> values = new ArrayList<>();
+                    for (String field : command.subList(2, command.size())) {
+                        values.add(hash.get(field));
+                    }
+                    return values;
+                }
+                case "HSET": {
+                    Map<String, String> hash = hash(command.get(1), true);
+                    long added = 0;
+                    for (int i = 2; i + 1 < command.size(); i += 2) {
+                        if (hash.put(command.get(i), command.get(i + 1)) == null) {
+                            added++;
+                        }
+                    }
+                    return added;
+                }
+                case "ZADD": {
+                    Map<String, Double> zset = zset(command.get(1), true);
+                    long added = 0;
+                    for (int i = 2; i + 1 < command.size(); i += 2) {
+                        if (zset.put(command.get(i + 1), Double.parseDouble(command.get(i))) == null) {
+                            added++;
+                        }
+                    }
+                    return added;
+                }
+                case "ZREVRANGE": {
+                    List<Map.Entry<String, Double>> entries = new ArrayList<>(zset(command.get(1), false).entrySet());
+                    entries.sort(Map.Entry.<String, Double>comparingByValue()
+                            .thenComparing(Map.Entry.comparingByKey()).reversed());
+                    int[] range = range(entries.size(), Integer.parseInt(command.get(2)), Integer.parseInt(command.get(3)));
+                    boolean withScores = command.size() > 4 && command.get(4).equalsIgnoreCase("WITHSCORES");
+                    List<Object> reply = new ArrayList<>();
+                    for (Map.Entry<String, Double> entry : entries.subList(range[0], range[1])) {
+                        reply.add(entry.getKey());
+                        if (withScores) {
+                            reply.add(formatScore(entry.getValue()));
+                        }
+                    }
+                    return reply;
+                }
+                case "DEL": {
+                    long removed = 0;
+                    for (String key : command.subList(1, command.size())) {
+                        if (keyspace.remove(key) != null) {
+                            removed++;
+                        }
+                    }
+                    return removed;
+                }
+                case "FLUSHALL":
+                    keyspace.clear();
+                    return new Status("OK");
+                case "SCRIPT":
+                    return script(command);
+                case "EVAL": {
+                    String sha = sha1(command.get(1));
+                    if (!knownScripts.containsKey(sha)) {
+                        return new Error("ERR the RESP stand-in only runs the scripts of RedisDocumentStore");
+                    }
+                    loadedScripts.add(sha);
+                    return eval(sha, command);
+                }
+                case "EVALSHA":
+                    if (!loadedScripts.contains(command.get(1))) {
+                        return new Error("NOSCRIPT No matching script. Please use EVAL.");
+                    }
+                    return eval(command.get(1), command);
+                default:
+                    return new Error("ERR unknown command '" + command.get(0) + "'");
+            }
+        } catch (ClassCastException e) {
+            return new Error("WRONGTYPE Operation against a key holding the wrong kind of value");
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            return new Error("ERR wrong arguments for '" + command.get(0) + "'");
+        }
+    }
+
+    private Object script(List<String> command) {
+        String sub = command.get(1).toUpperCase();
+        if (sub.equals("LOAD")) {
+            String sha = sha1(command.get(2));
+            if (!knownScripts.containsKey(sha)) {
+                return new Error("ERR the RESP stand-in only runs the scripts of RedisDocumentStore");
+            }
+            loadedScripts.add(sha);
+            return sha;
+        }
+        if (sub.equals("FLUSH")) {
+            loadedScripts.clear();
+            return new Status("OK");
+        }
+        return new Error("ERR unknown SCRIPT subcommand '" + command.get(1) + "'");
+    }
+
+    private Object eval(String sha, List<String> command) {
+        int keyCount = Integer.parseInt(command.get(2));
+        List<String> keys = command.subList(3, 3 + keyCount);
+        List<String> args = command.subList(3 + keyCount, command.size());
+        return knownScripts.get(sha).apply(new ScriptCall(keys, args));
+    }
+
+    // RedisDocumentStore.APPEND_SCRIPT
+    private Object compareAndAppend(ScriptCall call) {
+        List<String> history = list(call.keys().get(0), true);
+        long length = history.size();
+        int expected = Integer.parseInt(call.args().get(0));
+        List<String> ops = call.args().subList(1, call.args().size());
+        if (length != expected) {
+            if (length >= expected + ops.size() && history.subList(expected, expected + ops.size()).equals(ops)) {
+                return List.of(1L, (long) (expected + ops.size()));
+            }
+            return List.of(0L, length);
+        }
+        history.addAll(ops);
+        return List.of(1L, (long) history.size());
+    }
+
+    // RedisDocumentStore.SNAPSHOT_SCRIPT
+    private Object writeSnapshotIfNewer(ScriptCall call) {
+        List<String> history = list(call.keys().get(1), false);
+        int revision = Integer.parseInt(call.args().get(0));
+        if (history.size() < revision || (revision > 0 && !history.get(revision - 1).equals(call.args().get(2)))) {
+            return -1L;
+        }
+        Map<String, String> snapshot = hash(call.keys().get(0), true);
+        long current = Long.parseLong(snapshot.getOrDefault("revision", "-1"));
+        if (current > revision) {
+            return 0L;
+        }
+        snapshot.put("revision", call.args().get(0));
+        snapshot.put("content", call.args().get(1));
+        return 1L;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> list(String key, boolean create) {
+        Object value = create ? keyspace.computeIfAbsent(key, k -> new ArrayList<String>()) : keyspace.get(key);
+        return value == null ? List.of() : (List<String>) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> hash(String key, boolean create) {
+        Object value = create ? keyspace.computeIfAbsent(key, k -> new HashMap<String, String>()) : keyspace.get(key);
+        return value == null ? Map.of() : (Map<String, String>) value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Double> zset(String key, boolean create) {
+        Object value = create ? keyspace.computeIfAbsent(key, k -> new ZSet()) : keyspace.get(key);
+        return value == null ? Map.of() : (ZSet) value;
+    }
+
+    /**
+     * Redis' inclusive, possibly negative [start, stop] as a Java [from, to).
+     */
+    private static int[] range(int size, int start, int stop) {
+        if (start < 0) {
+            start = Math.max(0, size + start);
+        }
+        if (stop < 0) {
+            stop = size + stop;
+        }
+        stop = Math.min(stop, size - 1);
+        return start > stop ? new int[]{0, 0} : new int[]{start, stop + 1};
+    }
+
+    private static String formatScore(double score) {
+        return score == Math.rint(score) && !Double.isInfinite(score) ? String.valueOf((long) score) : String.valueOf(score);
+    }
+
+    private static List<String> readCommand(InputStream in) throws IOException {
+        int type = in.read();
+        if (type < 0) {
+            return null;
+        }
+        if (type != '*') {
+            throw new IOException("Only RESP arrays of bulk strings are supported");
+        }
+        int count = readNumber(in);
+        List<String> command = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (in.read() != '$') {
+                throw new IOException("Only RESP arrays of bulk strings are supported");
+            }
+            int length = readNumber(in);
+            byte[] bytes = new byte[length];
+            if (in.readNBytes(bytes, 0, length) < length) {
+                throw new IOException("Connection closed mid-command");
+            }
+            in.skipNBytes(2);
+            command.add(new String(bytes, StandardCharsets.UTF_8));
+        }
+        return command;
+    }
+
+    private static int readNumber(InputStream in) throws IOException {
+        int value = 0;
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c < '0' || c > '9') {
+                throw new IOException(c < 0 ? "Connection closed mid-command" : "Malformed RESP length");
+            }
+            value = value * 10 + (c - '0');
+        }
+        in.read();
+        return value;
+    }
+
+    private static void writeReply(OutputStream out, Object reply) throws IOException {
+        if (reply == null) {
+            out.write("$-1\r\n".getBytes(StandardCharsets.US_ASCII));
+        } else if (reply instanceof Status status) {
+            out.write(("+" + status.text() + "\r\n").getBytes(StandardCharsets.UTF_8));
+        } else if (reply instanceof Error error) {
+            out.write(("-" + error.message() + "\r\n").getBytes(StandardCharsets.UTF_8));
+        } else if (reply instanceof Long number) {
+            writeLine(out, ':', number);
+        } else if (reply instanceof String text) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            writeLine(out, '$', bytes.length);
+            out.write(bytes);
+            out.write(CRLF);
+        } else if (reply instanceof List<?> items) {
+            writeLine(out, '*', items.size());
+            for (Object item : items) {
+                writeReply(out, item);
+            }
+        } else {
+            throw new IllegalStateException("Cannot encode " + reply.getClass());
+        }
+    }
+
+    private static void writeLine(OutputStream out, char type, long value) throws IOException {
+        out.write(type);
+        out.write(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+    }
+
+    private static String sha1(String script) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record ScriptCall(List<String> keys, List<String> args) {
+    }
+
+    private record Status(String text) {
+    }
+
+    private record Error(String message) {
+    }
+
+    // member -> score, its own type so a hash key is not mistaken for a sorted set
+    private static class ZSet extends HashMap<String, Double> {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 6379;
+        long replyDelayMicros = args.length > 1 ? Long.parseLong(args[1]) : 0;
+        try (InProcessRespServer server = new InProcessRespServer(port, replyDelayMicros)) {
+            System.out.println("RESP stand-in listening on 127.0.0.1:" + server.getPort());
+            Thread.currentThread().join();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.dvc.OTAction.debug;
+
+import com.dvc.OTAction.dto.TextOperation;
+import com.dvc.OTAction.utils.OTUtils;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * OTUtils.apply with the output filled on a fork-join pool. ParallelApplyBenchmark found no size at which
+ * it beats the sequential apply, so the server does not use it; it stays here to be measured again on
+ * other hardware, and TransformFuzzer checks it still matches OTUtils.apply.
+ */
+public final class ParallelApply {
+
+    private ParallelApply() {
+    }
+
+    /**
+     * Same result (and errors) as {@link OTUtils#apply}, for large operations with many components, e.g. a
+     * replace-all or a multi-cursor edit over a big document.
+     * @Work
+     * One pass over the components works out where each one reads from in the old doc and where it
+     * writes to in the new one (and validates the op like OTUtils.apply does). After that every output range
+     * is independent: the pre-sized output is cut into slices at those offsets and the slices are
+     * filled concurrently on the pool, each copying the retains and inserts that overlap it.
+     * Deletes write nothing, so they never need a slice.
+     *
+     * Documents (and results) shorter than threshold characters are applied by OTUtils.apply on the calling thread.
+     */
+    public static String apply(String doc, TextOperation operation, ForkJoinPool pool, int threshold) {
+        if (Math.max(doc.length(), operation.getTargetLength()) < threshold) {
+            return OTUtils.apply(doc, operation);
+        }
+        List<Object> ops = operation.getOps();
+        Object[] components = new Object[ops.size()];
+        int[] readFrom = new int[ops.size()];
+        int[] writeFrom = new int[ops.size() + 1];
+        int docIdx = 0;
+        int outIdx = 0;
+        int count = 0;
+        for (Object op : ops) {
+            if (TextOperation.isRetain(op)) {
+                int retainCount = (Integer) op;
+                if (docIdx + retainCount > doc.length()) {
+                    throw new IllegalArgumentException("Retain exceeds document length.");
+                }
+                components[count] = op;
+                readFrom[count] = docIdx;
+                writeFrom[count++] = outIdx;
+                docIdx += retainCount;
+                outIdx += retainCount;
+            } else if (TextOperation.isInsert(op)) {
+                components[count] = op;
+                writeFrom[count++] = outIdx;
+                outIdx += ((String) op).length();
+            } else if (TextOperation.isDelete(op)) {
+                int deleteCount = -(Integer) op;
+                if (docIdx + deleteCount > doc.length()) {
+                    throw new IllegalArgumentException("Delete exceeds document length.");
+                }
+                docIdx += deleteCount;
+            } else {
+                throw new IllegalArgumentException("Invalid op type in operation: " + op);
+            }
+        }
+        if (docIdx != doc.length()) {
+            throw new IllegalArgumentException("Operation did not consume the entire document.");
+        }
+        writeFrom[count] = outIdx;
+
+        char[] out = new char[outIdx];
+        // a few slices per worker, so an unlucky split does not leave the others idle
+        int sliceLength = Math.max(Math.max(1, threshold / 4), outIdx / (4 * pool.getParallelism()) + 1);
+        pool.invoke(new ApplySlices(doc, components, readFrom, writeFrom, count, out, 0, outIdx, sliceLength));
+        return new String(out);
+    }
+
+    /**
+     * Fills out[from, to), halving the range until it is at most sliceLength long.
+     */
+    private static class ApplySlices extends RecursiveAction {
+        private final String doc;
+        private final Object[] components;
+        private final int[] readFrom;
+        private final int[] writeFrom;
+        private final int count;
+        private final char[] out;
+        private final int from;
+        private final int to;
+        private final int sliceLength;
+
+        ApplySlices(String doc, Object[] components, int[] readFrom, int[] writeFrom, int count,
+                    char[] out, int from, int to, int sliceLength) {
+            this.doc = doc;
+            this.components = components;
+            this.readFrom = readFrom;
+            this.writeFrom = writeFrom;
+            this.count = count;
+            this.out = out;
+            this.from = from;
+            this.to = to;
+            this.sliceLength = sliceLength;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > sliceLength) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ApplySlices(doc, components, readFrom, writeFrom, count, out, from, mid, sliceLength),
+                        new ApplySlices(doc, components, readFrom, writeFrom, count, out, mid, to, sliceLength));
+                return;
+            }
+            // the component that writes out[from]: last i with writeFrom[i] <= from
+            int lo = 0, hi = count - 1;
+            while (lo < hi) {
+                int mid = (lo + hi + 1) >>> 1;
+                if (writeFrom[mid] <= from) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            for (int i = lo; i < count && writeFrom[i] < to; i++) {
+                int start = Math.max(from, writeFrom[i]);
+                int end = Math.min(to, writeFrom[i + 1]);
+                if (start >= end) {
+                    continue; // empty insert
+                }
+                int skip = start - writeFrom[i];
+                if (components[i] instanceof String insert) {
+                    insert.getChars(skip, skip + end - start, out, start);
+                } else {
+                    doc.getChars(readFrom[i] + skip, readFrom[i] + skip + end - start, out, start);
+                }
+            }
+        }
+    }
+}
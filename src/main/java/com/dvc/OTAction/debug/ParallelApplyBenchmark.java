@@ -0,0 +1,103 @@
+package com.dvc.OTAction.debug;
+
+import com.dvc.OTAction.dto.TextOperation;
+import com.dvc.OTAction.utils.OTUtils;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Where parallel apply would start to pay off: OTUtils.apply vs ParallelApply.apply on a fork-join pool, over
+ * growing documents.
+ *
+ * The op is a replace-all: every spacing characters 5 are deleted and 6 inserted, so it has a component
+ * every few dozen characters and touches every chunk. Each size is timed until it has run for a while
+ * and the median is reported; parallel results are checked against the sequential ones.
+ * The break-even printed at the end is the smallest size from which the parallel path won at every larger
+ * size. The server applies ops sequentially; this is what to run before changing that.
+ *
+ * Usage: ParallelApplyBenchmark [maxLength] [threads] [spacing]
+ */
+public class ParallelApplyBenchmark {
+
+    private static final long MIN_MEASURE_NANOS = TimeUnit.MILLISECONDS.toNanos(300);
+    private static final int MIN_RUNS = 5;
+
+    public static void main(String[] args) {
+        int maxLength = args.length > 0 ? Integer.parseInt(args[0]) : 1 << 24;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        int spacing = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        System.out.printf("%d threads, one edit every %d characters%n", threads, spacing);
+        System.out.printf("%12s %10s | %12s %12s %8s%n", "length", "components", "apply us", "parallel us", "speedup");
+        int breakEven = -1;
+        try {
+            for (int length = 1 << 12; length <= maxLength; length <<= 2) {
+                SplittableRandom random = new SplittableRandom(length);
+                String doc = randomText(random, length);
+                TextOperation operation = replaceAll(random, length, spacing);
+
+                String expected = OTUtils.apply(doc, operation);
+                if (!expected.equals(ParallelApply.apply(doc, operation, pool, 0))) {
+                    throw new IllegalStateException("ParallelApply differs from apply at length " + length);
+                }
+
+                double apply = medianMicros(() -> OTUtils.apply(doc, operation));
+                double parallelApply = medianMicros(() -> ParallelApply.apply(doc, operation, pool, 0));
+                System.out.printf("%,12d %,10d | %,12.0f %,12.0f %7.2fx%n", length,
+                        operation.getOps().size(), apply, parallelApply, apply / parallelApply);
+
+                breakEven = parallelApply < apply ? (breakEven < 0 ? length : breakEven) : -1;
+            }
+        } finally {
+            pool.shutdown();
+        }
+        System.out.println("break-even: " + (breakEven < 0
+                ? "none up to the largest size (more threads, or cores, needed)" : "from ~" + breakEven + " characters"));
+    }
+
+    private static double medianMicros(Supplier<Object> run) {
+        // warm up
+        long warmupEnd = System.nanoTime() + MIN_MEASURE_NANOS / 3;
+        while (System.nanoTime() < warmupEnd) {
+            run.get();
+        }
+        long[] samples = new long[1024];
+        int count = 0;
+        long end = System.nanoTime() + MIN_MEASURE_NANOS;
+        while ((System.nanoTime() < end || count < MIN_RUNS) && count < samples.length) {
+            long start = System.nanoTime();
+            run.get();
+            samples[count++] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples, 0, count);
+        return samples[count / 2] / 1000.0;
+    }
+
+    private static String randomText(SplittableRandom random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(random.nextInt(40) == 0 ? '\n' : (char) ('a' + random.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    private static TextOperation replaceAll(SplittableRandom random, int length, int spacing) {
+        TextOperation operation = new TextOperation();
+        int position = 0;
+        while (position + spacing <= length) {
+            int before = random.nextInt(spacing - 5);
+            operation.retain(before);
+            operation.delete(5);
+            operation.insert("REPLAC");
+            operation.retain(spacing - before - 5);
+            position += spacing;
+        }
+        operation.retain(length - position);
+        return operation;
+    }
+}
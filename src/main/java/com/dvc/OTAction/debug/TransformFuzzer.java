@@ -0,0 +1,273 @@
+package com.dvc.OTAction.debug;
+
+import com.dvc.OTAction.dto.TextOperation;
+import com.dvc.OTAction.utils.OTUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+
+/**
+ * Randomized convergence checker for OTUtils.
+ *
+ * Every iteration builds a random document plus random concurrent operations against it and checks:
+ *  - TP1: apply(apply(doc, a), b') == apply(apply(doc, b), a')
+ *  - compose: applying b1..bk one by one == applying compose(b1..bk)
+ *  - chain: transforming a through b1..bk one by one vs transforming a against compose(b1..bk).
+ *    Both results have to converge (TP1 against the composed op), and they must contain the same text.
+ *    The only allowed difference is the order of inserts that end up at the same spot: once the
+ *    composed op has collapsed a deleted region, a's insert can tie-break differently than it did
+ *    step by step. Those cases are counted as tie-order differences rather than failures, and they
+ *    are the reason a composed op is not a drop-in replacement for a chained transform.
+ *  - the apply under test (defaults to OTUtils.apply) matches OTUtils.apply
+ *
+ * Runs on all cores until the time budget is used up, so it can be used as a gate
+ * whenever a faster code path is swapped in for the reference one.
+ *
+ * Usage: TransformFuzzer [seconds] [threads] [seed] [parallel]
+ * ("parallel" checks ParallelApply.apply with a threshold of 0, so even the tiny fuzz documents get split)
+ */
+public class TransformFuzzer {
+
+    private static final String ALPHABET = "abcdefghij \n";
+    private static final int MAX_DOC_LENGTH = 64;
+    private static final int MAX_CHAIN_LENGTH = 6;
+    private static final int MAX_FAILURES = 20;
+
+    public static final String TIE_ORDER = "tie-order";
+
+    private final BiFunction<String, TextOperation, String> applyUnderTest;
+
+    public TransformFuzzer() {
+        this(OTUtils::apply);
+    }
+
+    public TransformFuzzer(BiFunction<String, TextOperation, String> applyUnderTest) {
+        this.applyUnderTest = applyUnderTest;
+    }
+
+    public static class Report {
+        private final long iterations;
+        private final long tieOrderDifferences;
+        private final List<String> failures;
+        private final long elapsedMillis;
+
+        Report(long iterations, long tieOrderDifferences, List<String> failures, long elapsedMillis) {
+            this.iterations = iterations;
+            this.tieOrderDifferences = tieOrderDifferences;
+            this.failures = failures;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public long getIterations() {
+            return iterations;
+        }
+
+        public long getTieOrderDifferences() {
+            return tieOrderDifferences;
+        }
+
+        public List<String> getFailures() {
+            return failures;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public boolean isClean() {
+            return failures.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d iterations in %d ms, %d tie-order differences, %d failures",
+                    iterations, elapsedMillis, tieOrderDifferences, failures.size());
+        }
+    }
+
+    public Report run(Duration budget, int threads, long seed) throws InterruptedException {
+        long start = System.nanoTime();
+        long deadline = start + budget.toNanos();
+        AtomicLong iterations = new AtomicLong();
+        AtomicLong tieOrderDifferences = new AtomicLong();
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                SplittableRandom workerRandom = new SplittableRandom(seed + t);
+                workers.add(executor.submit(() -> {
+                    while (System.nanoTime() < deadline && failures.size() < MAX_FAILURES) {
+                        long iterationSeed = workerRandom.nextLong();
+                        String failure = runIteration(iterationSeed);
+                        if (TIE_ORDER.equals(failure)) {
+                            tieOrderDifferences.incrementAndGet();
+                        } else if (failure != null) {
+                            failures.add("seed=" + iterationSeed + ": " + failure);
+                        }
+                        iterations.incrementAndGet();
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                try {
+                    worker.get();
+                } catch (Exception e) {
+                    failures.add("worker crashed: " + e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        return new Report(iterations.get(), tieOrderDifferences.get(), new ArrayList<>(failures), elapsedMillis);
+    }
+
+    /**
+     * Runs one randomized check. Returns null when everything converged, {@link #TIE_ORDER} when the
+     * only difference was insert tie-breaking, otherwise a description that can be reproduced with the same seed.
+     */
+    public String runIteration(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        String doc = randomString(random, random.nextInt(MAX_DOC_LENGTH + 1));
+        TextOperation a = randomOperation(random, doc);
+        TextOperation b = randomOperation(random, doc);
+        try {
+            // TP1
+            List<TextOperation> pair = OTUtils.transform(a, b);
+            String viaA = OTUtils.apply(OTUtils.apply(doc, a), pair.get(1));
+            String viaB = OTUtils.apply(OTUtils.apply(doc, b), pair.get(0));
+            if (!viaA.equals(viaB)) {
+                return String.format("TP1 violated doc=%s a=%s b=%s -> %s vs %s",
+                        quote(doc), a.getOps(), b.getOps(), quote(viaA), quote(viaB));
+            }
+
+            String expected = OTUtils.apply(doc, a);
+            String actual = applyUnderTest.apply(doc, a);
+            if (!expected.equals(actual)) {
+                return String.format("apply mismatch doc=%s a=%s -> %s vs %s",
+                        quote(doc), a.getOps(), quote(expected), quote(actual));
+            }
+
+            // chain of concurrent ops b1..bk
+            int chainLength = 1 + random.nextInt(MAX_CHAIN_LENGTH);
+            String current = doc;
+            TextOperation composed = new TextOperation().retain(doc.length());
+            TextOperation chained = a;
+            List<List<Object>> chain = new ArrayList<>();
+            for (int i = 0; i < chainLength; i++) {
+                TextOperation next = randomOperation(random, current);
+                chain.add(next.getOps());
+                current = OTUtils.apply(current, next);
+                composed = OTUtils.compose(composed, next);
+                chained = OTUtils.transform(chained, next).get(0);
+            }
+
+            String composedResult = OTUtils.apply(doc, composed);
+            if (!composedResult.equals(current)) {
+                return String.format("compose mismatch doc=%s chain=%s -> %s vs %s",
+                        quote(doc), chain, quote(current), quote(composedResult));
+            }
+
+            List<TextOperation> composedPair = OTUtils.transform(a, composed);
+            String againstComposedResult = OTUtils.apply(current, composedPair.get(0));
+            String composedAfterA = OTUtils.apply(OTUtils.apply(doc, a), composedPair.get(1));
+            if (!againstComposedResult.equals(composedAfterA)) {
+                return String.format("TP1 violated against composed op doc=%s a=%s chain=%s -> %s vs %s",
+                        quote(doc), a.getOps(), chain, quote(againstComposedResult), quote(composedAfterA));
+            }
+
+            String chainedResult = OTUtils.apply(current, chained);
+            if (!chainedResult.equals(againstComposedResult)) {
+                if (!sameCharacters(chainedResult, againstComposedResult)) {
+                    return String.format("chain/compose transform mismatch doc=%s a=%s chain=%s -> %s vs %s",
+                            quote(doc), a.getOps(), chain, quote(chainedResult), quote(againstComposedResult));
+                }
+                return TIE_ORDER;
+            }
+        } catch (RuntimeException e) {
+            return String.format("exception doc=%s a=%s b=%s: %s", quote(doc), a.getOps(), b.getOps(), e);
+        }
+        return null;
+    }
+
+    static TextOperation randomOperation(SplittableRandom random, String doc) {
+        TextOperation operation = new TextOperation();
+        int remaining = doc.length();
+        while (remaining > 0) {
+            int span = 1 + random.nextInt(Math.min(remaining, 8));
+            int choice = random.nextInt(10);
+            if (choice < 5) {
+                operation.retain(span);
+                remaining -= span;
+            } else if (choice < 8) {
+                operation.delete(span);
+                remaining -= span;
+            } else {
+                operation.insert(randomString(random, 1 + random.nextInt(4)));
+            }
+        }
+        if (random.nextInt(3) == 0) {
+            operation.insert(randomString(random, 1 + random.nextInt(4)));
+        }
+        return operation;
+    }
+
+    static String randomString(SplittableRandom random, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return sb.toString();
+    }
+
+    private static boolean sameCharacters(String s1, String s2) {
+        if (s1.length() != s2.length()) {
+            return false;
+        }
+        char[] c1 = s1.toCharArray();
+        char[] c2 = s2.toCharArray();
+        Arrays.sort(c1);
+        Arrays.sort(c2);
+        return Arrays.equals(c1, c2);
+    }
+
+    private static String quote(String s) {
+        return "\"" + s.replace("\n", "\\n") + "\"";
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        long seconds = args.length > 0 ? Long.parseLong(args[0]) : 10;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : System.nanoTime();
+        boolean parallel = args.length > 3 && args[3].equals("parallel");
+
+        System.out.println("Fuzzing transform/compose" + (parallel ? " and ParallelApply" : "") + " for " + seconds
+                + "s on " + threads + " threads, seed=" + seed);
+        TransformFuzzer fuzzer = parallel
+                ? new TransformFuzzer((doc, op) -> ParallelApply.apply(doc, op, ForkJoinPool.commonPool(), 0))
+                : new TransformFuzzer();
+        Report report = fuzzer.run(Duration.ofSeconds(seconds), threads, seed);
+        System.out.println(report);
+        for (String failure : report.getFailures()) {
+            System.out.println("❌ " + failure);
+        }
+        if (!report.isClean()) {
+            System.exit(1);
+        }
+        System.out.println("✔ No divergence found");
+    }
+}
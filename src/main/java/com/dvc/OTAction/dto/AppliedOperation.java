@@ -0,0 +1,70 @@
+package com.dvc.OTAction.dto;
+
+import java.util.List;
+
+/**
+ * Result of OtService.receiveOperation: the operation as it was applied on the server
+ * (after transforming against concurrent ops), the revision the document is at after it
+ * and the document checksum at that revision (see ChunkedText).
+ *
+ * unseenOperations are the concurrent ops the author had not seen, oldest first, as they apply
+ * after the author's own op. Positions the author sent along with the op move through them to
+ * end up at revision.
+ *
+ * pulledOperations are ops other nodes appended to a shared store before this one, which were pulled in
+ * while applying it (see OtService.receiveShared), oldest first. They are broadcast before this op.
+ */
+public class AppliedOperation {
+
+    private final TextOperation operation;
+    private final int revision;
+    private final String checksum;
+    private final List<TextOperation> unseenOperations;
+    private final List<AppliedOperation> pulledOperations;
+
+    public AppliedOperation(TextOperation operation, int revision, String checksum) {
+        this(operation, revision, checksum, List.of());
+    }
+
+    public AppliedOperation(TextOperation operation, int revision, String checksum, List<TextOperation> unseenOperations) {
+        this(operation, revision, checksum, unseenOperations, List.of());
+    }
+
+    public AppliedOperation(TextOperation operation, int revision, String checksum, List<TextOperation> unseenOperations,
+                            List<AppliedOperation> pulledOperations) {
+        this.operation = operation;
+        this.revision = revision;
+        this.checksum = checksum;
+        this.unseenOperations = unseenOperations;
+        this.pulledOperations = pulledOperations;
+    }
+
+    public TextOperation getOperation() {
+        return operation;
+    }
+
+    public int getRevision() {
+        return revision;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public List<TextOperation> getUnseenOperations() {
+        return unseenOperations;
+    }
+
+    public List<AppliedOperation> getPulledOperations() {
+        return pulledOperations;
+    }
+
+    @Override
+    public String toString() {
+        return "AppliedOperation{" +
+                "operation=" + operation.getOps() +
+                ", revision=" + revision +
+                ", checksum='" + checksum + '\'' +
+                '}';
+    }
+}
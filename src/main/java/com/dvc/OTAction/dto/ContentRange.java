@@ -0,0 +1,48 @@
+package com.dvc.OTAction.dto;
+
+/**
+ * Part of a document: the text starting at offset (which is on line {@code line}), plus the
+ * size of the whole document and the revision the range was read at.
+ */
+public class ContentRange {
+
+    private final String content;
+    private final int offset;
+    private final int line;
+    private final int documentLength;
+    private final int documentLines;
+    private final int revision;
+
+    public ContentRange(String content, int offset, int line, int documentLength, int documentLines, int revision) {
+        this.content = content;
+        this.offset = offset;
+        this.line = line;
+        this.documentLength = documentLength;
+        this.documentLines = documentLines;
+        this.revision = revision;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getDocumentLength() {
+        return documentLength;
+    }
+
+    public int getDocumentLines() {
+        return documentLines;
+    }
+
+    public int getRevision() {
+        return revision;
+    }
+}
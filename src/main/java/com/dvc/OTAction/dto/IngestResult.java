@@ -0,0 +1,55 @@
+package com.dvc.OTAction.dto;
+
+/**
+ * Outcome of a full-text ingest: the revision / checksum the document is at afterwards, how big the
+ * computed edit was and whether the diff had to fall back to a coarser edit (see TextDiff).
+ */
+public class IngestResult {
+
+    private final int revision;
+    private final String checksum;
+    private final boolean changed;
+    private final int inserted;
+    private final int deleted;
+    private final boolean approximate;
+    private final long diffMillis;
+
+    public IngestResult(int revision, String checksum, boolean changed, int inserted, int deleted,
+                        boolean approximate, long diffMillis) {
+        this.revision = revision;
+        this.checksum = checksum;
+        this.changed = changed;
+        this.inserted = inserted;
+        this.deleted = deleted;
+        this.approximate = approximate;
+        this.diffMillis = diffMillis;
+    }
+
+    public int getRevision() {
+        return revision;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public boolean isChanged() {
+        return changed;
+    }
+
+    public int getInserted() {
+        return inserted;
+    }
+
+    public int getDeleted() {
+        return deleted;
+    }
+
+    public boolean isApproximate() {
+        return approximate;
+    }
+
+    public long getDiffMillis() {
+        return diffMillis;
+    }
+}
@@ -0,0 +1,102 @@
+package com.dvc.OTAction.dto;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * DTO representing a cursor / selection update sent from the client on /app/presence.
+ * Positions are character offsets into the document as of {@code revision}: cursorPosition {"index": n},
+ * selection {"anchor": a, "head": h} or {"ranges": [{"anchor": a, "head": h}, ...]}. Other fields are kept
+ * but not transformed (see PresenceService).
+ */
+public class PresencePayload {
+
+    private String clientId;
+    private int revision;
+    private String documentId;
+    private String sessionId;
+    private Map<String, Object> selection;
+    private Map<String, Integer> cursorPosition;
+
+    // Default constructor for deserialization
+    public PresencePayload() {
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(String clientId) {
+        this.clientId = clientId;
+    }
+
+    public int getRevision() {
+        return revision;
+    }
+
+    public void setRevision(int revision) {
+        this.revision = revision;
+    }
+
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    public void setDocumentId(String documentId) {
+        this.documentId = documentId;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public Map<String, Object> getSelection() {
+        return selection;
+    }
+
+    public void setSelection(Map<String, Object> selection) {
+        this.selection = selection;
+    }
+
+    public Map<String, Integer> getCursorPosition() {
+        return cursorPosition;
+    }
+
+    public void setCursorPosition(Map<String, Integer> cursorPosition) {
+        this.cursorPosition = cursorPosition;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        PresencePayload that = (PresencePayload) o;
+        return revision == that.revision &&
+                Objects.equals(clientId, that.clientId) &&
+                Objects.equals(documentId, that.documentId) &&
+                Objects.equals(sessionId, that.sessionId) &&
+                Objects.equals(selection, that.selection) &&
+                Objects.equals(cursorPosition, that.cursorPosition);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(clientId, revision, documentId, sessionId, selection, cursorPosition);
+    }
+
+    @Override
+    public String toString() {
+        return "PresencePayload{" +
+                "clientId='" + clientId + '\'' +
+                ", revision=" + revision +
+                ", documentId='" + documentId + '\'' +
+                ", sessionId='" + sessionId + '\'' +
+                ", selection=" + selection +
+                ", cursorPosition=" + cursorPosition +
+                '}';
+    }
+}
@@ -0,0 +1,87 @@
+package com.dvc.OTAction.dto;
+
+import java.util.Objects;
+
+/**
+ * Body of POST /ot/ingest: the full new text of a document, written by a tool that last saw it at {@code revision}.
+ */
+public class TextIngestPayload {
+
+    private String clientId;
+    private int revision;
+    private String content;
+    private String documentId;
+    private String sessionId;
+
+    public TextIngestPayload() {
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(String clientId) {
+        this.clientId = clientId;
+    }
+
+    public int getRevision() {
+        return revision;
+    }
+
+    public void setRevision(int revision) {
+        this.revision = revision;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    public void setDocumentId(String documentId) {
+        this.documentId = documentId;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TextIngestPayload that = (TextIngestPayload) o;
+        return revision == that.revision &&
+                Objects.equals(clientId, that.clientId) &&
+                Objects.equals(content, that.content) &&
+                Objects.equals(documentId, that.documentId) &&
+                Objects.equals(sessionId, that.sessionId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(clientId, revision, content, documentId, sessionId);
+    }
+
+    @Override
+    public String toString() {
+        // the content can be megabytes, only log its size
+        return "TextIngestPayload{" +
+                "clientId='" + clientId + '\'' +
+                ", revision=" + revision +
+                ", contentLength=" + (content == null ? 0 : content.length()) +
+                ", documentId='" + documentId + '\'' +
+                ", sessionId='" + sessionId + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,29 @@
+package com.dvc.OTAction.dto;
+
+/**
+ * Document content together with the revision it belongs to and its checksum.
+ */
+public class VersionedContent {
+
+    private final String content;
+    private final int revision;
+    private final String checksum;
+
+    public VersionedContent(String content, int revision, String checksum) {
+        this.content = content;
+        this.revision = revision;
+        this.checksum = checksum;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public int getRevision() {
+        return revision;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+}
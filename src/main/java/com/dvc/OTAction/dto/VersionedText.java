@@ -0,0 +1,26 @@
+package com.dvc.OTAction.dto;
+
+import com.dvc.OTAction.utils.ChunkedText;
+
+/**
+ * Immutable head text of a document together with its revision. Unlike VersionedContent the text
+ * is not flattened, so callers can read ranges of it or stream it chunk by chunk.
+ */
+public class VersionedText {
+
+    private final ChunkedText text;
+    private final int revision;
+
+    public VersionedText(ChunkedText text, int revision) {
+        this.text = text;
+        this.revision = revision;
+    }
+
+    public ChunkedText getText() {
+        return text;
+    }
+
+    public int getRevision() {
+        return revision;
+    }
+}
@@ -0,0 +1,266 @@
+package com.dvc.OTAction.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether an incoming op may be processed at all, before it queues up behind the OtService lock.
+ *
+ * Three limits, checked in this order:
+ *  - a bounded queue per document: at most ot.admission.max-queued-per-document ops of one document may be
+ *    admitted and not yet finished,
+ *  - a token bucket per client (ot.admission.client-*), so one runaway bot or paste loop only slows itself down,
+ *  - a token bucket per document (ot.admission.document-*), so one document cannot take the whole node.
+ * A rejected op is not processed; the caller NACKs it with the time after which a retry will be admitted.
+ * A client whose bucket runs low is admitted but told to slow down, at most once per second.
+ *
+ * Used for STOMP ops (OtController) and POST /ot/ingest (IngestController) alike.
+ */
+@Service
+public class AdmissionControl {
+
+    public enum Reason { QUEUE_FULL, CLIENT_RATE, DOCUMENT_RATE }
+
+    private static final double SLOW_DOWN_FRACTION = 0.25;
+    private static final long SLOW_DOWN_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long FORGET_AFTER_NANOS = TimeUnit.MINUTES.toNanos(5);
+    // a full queue (ours or PersistencePipeline's) has no refill time, ask for a short pause
+    public static final long QUEUE_FULL_RETRY_MILLIS = 100;
+
+    private final double clientRate;
+    private final double clientBurst;
+    private final double documentRate;
+    private final double documentBurst;
+    private final int maxQueued;
+
+    private final Map<String, ClientState> clients = new ConcurrentHashMap<>();
+    private final Map<String, DocumentState> documents = new ConcurrentHashMap<>();
+
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong delayed = new AtomicLong();
+    private final AtomicLong slowDowns = new AtomicLong();
+    private final Map<Reason, AtomicLong> rejected = new EnumMap<>(Reason.class);
+
+    public AdmissionControl(@Value("${ot.admission.client-ops-per-sec:30}") double clientRate,
+                            @Value("${ot.admission.client-burst:60}") double clientBurst,
+                            @Value("${ot.admission.document-ops-per-sec:300}") double documentRate,
+                            @Value("${ot.admission.document-burst:600}") double documentBurst,
+                            @Value("${ot.admission.max-queued-per-document:256}") int maxQueued) {
+        this.clientRate = clientRate;
+        this.clientBurst = clientBurst;
+        this.documentRate = documentRate;
+        this.documentBurst = documentBurst;
+        this.maxQueued = maxQueued;
+        for (Reason reason : Reason.values()) {
+            rejected.put(reason, new AtomicLong());
+        }
+    }
+
+    /**
+     * Tries to admit one op. An admitted op must be followed by exactly one {@link #complete} for the same document.
+     */
+    public Decision tryAdmit(String sessionId, String documentId, String clientId) {
+        DocumentState document = documents.computeIfAbsent(sessionId + ":" + documentId,
+                k -> new DocumentState(documentRate, documentBurst));
+        int queued = document.queued.incrementAndGet();
+        if (queued > maxQueued) {
+            document.queued.decrementAndGet();
+            return reject(Reason.QUEUE_FULL, 0);
+        }
+
+        ClientState client = clients.computeIfAbsent(String.valueOf(clientId), k -> new ClientState(clientRate, clientBurst));
+        long clientWait = client.bucket.tryTake();
+        if (clientWait > 0) {
+            document.queued.decrementAndGet();
+            return reject(Reason.CLIENT_RATE, clientWait);
+        }
+        long documentWait = document.bucket.tryTake();
+        if (documentWait > 0) {
+            client.bucket.refund();
+            document.queued.decrementAndGet();
+            return reject(Reason.DOCUMENT_RATE, documentWait);
+        }
+
+        admitted.incrementAndGet();
+        if (queued > 1) {
+            // admitted, but it will wait behind the other ops of this document
+            delayed.incrementAndGet();
+        }
+        boolean slowDown = client.shouldSlowDown();
+        if (slowDown) {
+            slowDowns.incrementAndGet();
+        }
+        return new Decision(null, 0, slowDown);
+    }
+
+    public void complete(String sessionId, String documentId) {
+        DocumentState document = documents.get(sessionId + ":" + documentId);
+        if (document != null) {
+            // never below 0, in case sweep() replaced the state while the op was in flight
+            document.queued.updateAndGet(queued -> Math.max(0, queued - 1));
+        }
+    }
+
+    private Decision reject(Reason reason, long waitNanos) {
+        rejected.get(reason).incrementAndGet();
+        long retryAfterMillis = waitNanos > 0 ? Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos)) : QUEUE_FULL_RETRY_MILLIS;
+        return new Decision(reason, retryAfterMillis, true);
+    }
+
+    /**
+     * True if an admitted op failed only because the persistence pipeline of its document was full, so resending
+     * it unchanged after QUEUE_FULL_RETRY_MILLIS can work. Any other failure (invalid revision, malformed op)
+     * will fail the same way again; the client has to resync instead.
+     */
+    public static boolean isRetryable(Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof RejectedExecutionException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drops buckets nobody has taken from for a while, so one-off clients don't pile up.
+     */
+    @Scheduled(fixedDelayString = "${ot.admission.sweep-interval-ms:60000}")
+    public void sweep() {
+        long now = System.nanoTime();
+        clients.values().removeIf(client -> client.bucket.isIdleSince(now - FORGET_AFTER_NANOS));
+        documents.values().removeIf(document -> document.queued.get() == 0 && document.bucket.isIdleSince(now - FORGET_AFTER_NANOS));
+    }
+
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> mp = new HashMap<>();
+        mp.put("admitted", admitted.get());
+        mp.put("delayed", delayed.get());
+        mp.put("slowDowns", slowDowns.get());
+        Map<String, Long> rejectedByReason = new HashMap<>();
+        long total = 0;
+        for (Map.Entry<Reason, AtomicLong> entry : rejected.entrySet()) {
+            rejectedByReason.put(entry.getKey().name(), entry.getValue().get());
+            total += entry.getValue().get();
+        }
+        mp.put("rejected", total);
+        mp.put("rejectedByReason", rejectedByReason);
+        int queued = 0;
+        for (DocumentState document : documents.values()) {
+            queued += document.queued.get();
+        }
+        mp.put("queued", queued);
+        mp.put("trackedClients", clients.size());
+        mp.put("trackedDocuments", documents.size());
+        return mp;
+    }
+
+    public static class Decision {
+        private final Reason rejectedFor;
+        private final long retryAfterMillis;
+        private final boolean slowDown;
+
+        Decision(Reason rejectedFor, long retryAfterMillis, boolean slowDown) {
+            this.rejectedFor = rejectedFor;
+            this.retryAfterMillis = retryAfterMillis;
+            this.slowDown = slowDown;
+        }
+
+        public boolean isAdmitted() {
+            return rejectedFor == null;
+        }
+
+        public Reason getRejectedFor() {
+            return rejectedFor;
+        }
+
+        public long getRetryAfterMillis() {
+            return retryAfterMillis;
+        }
+
+        public boolean isSlowDown() {
+            return slowDown;
+        }
+    }
+
+    private static class TokenBucket {
+        private final double ratePerNano;
+        private final double capacity;
+        private double tokens;
+        private long lastRefillNanos = System.nanoTime();
+        private long lastTakeNanos = lastRefillNanos;
+
+        TokenBucket(double ratePerSecond, double capacity) {
+            this.ratePerNano = ratePerSecond / 1e9;
+            this.capacity = Math.max(1, capacity);
+            this.tokens = this.capacity;
+        }
+
+        /**
+         * Takes a token and returns 0, or returns how many nanos until one will be available.
+         */
+        synchronized long tryTake() {
+            refill();
+            lastTakeNanos = lastRefillNanos;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / ratePerNano);
+        }
+
+        synchronized void refund() {
+            tokens = Math.min(capacity, tokens + 1);
+        }
+
+        synchronized boolean isLow() {
+            return tokens < capacity * SLOW_DOWN_FRACTION;
+        }
+
+        synchronized boolean isIdleSince(long nanos) {
+            return lastTakeNanos - nanos < 0;
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * ratePerNano);
+            lastRefillNanos = now;
+        }
+    }
+
+    private static class ClientState {
+        private final TokenBucket bucket;
+        private final AtomicLong lastSlowDownNanos = new AtomicLong(System.nanoTime() - SLOW_DOWN_INTERVAL_NANOS);
+
+        ClientState(double rate, double burst) {
+            this.bucket = new TokenBucket(rate, burst);
+        }
+
+        boolean shouldSlowDown() {
+            if (!bucket.isLow()) {
+                return false;
+            }
+            long now = System.nanoTime();
+            long last = lastSlowDownNanos.get();
+            return now - last >= SLOW_DOWN_INTERVAL_NANOS && lastSlowDownNanos.compareAndSet(last, now);
+        }
+    }
+
+    private static class DocumentState {
+        private final TokenBucket bucket;
+        private final AtomicInteger queued = new AtomicInteger();
+
+        DocumentState(double rate, double burst) {
+            this.bucket = new TokenBucket(rate, burst);
+        }
+    }
+}
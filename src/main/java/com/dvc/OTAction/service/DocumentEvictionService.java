@@ -0,0 +1,42 @@
+package com.dvc.OTAction.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.logging.Logger;
+
+/**
+ * Periodically evicts documents that have had no ops or reads for ot.eviction.idle-ttl-ms and
+ * have nobody present on them. OtService writes them to a snapshot file and reloads them
+ * lazily on the next /ot/init or op.
+ */
+@Service
+public class DocumentEvictionService {
+
+    private static final Logger logger = Logger.getLogger(DocumentEvictionService.class.getName());
+
+    private final OtService otService;
+    private final PresenceService presenceService;
+    private final DocumentLoadTracker loadTracker;
+    private final long idleTtlMillis;
+
+    public DocumentEvictionService(OtService otService, PresenceService presenceService, DocumentLoadTracker loadTracker,
+                                   @Value("${ot.eviction.idle-ttl-ms:600000}") long idleTtlMillis) {
+        this.otService = otService;
+        this.presenceService = presenceService;
+        this.loadTracker = loadTracker;
+        this.idleTtlMillis = idleTtlMillis;
+    }
+
+    @Scheduled(fixedDelayString = "${ot.eviction.sweep-interval-ms:60000}")
+    public void sweep() {
+        long cutoff = System.currentTimeMillis() - idleTtlMillis;
+        int evicted = otService.evictIdle(cutoff, (sessionId, documentId) ->
+                !presenceService.hasClients(sessionId, documentId) && !loadTracker.isHot(sessionId, documentId));
+        if (evicted > 0) {
+            logger.info(String.format("Evicted %d idle documents, %d still resident (%d bytes)",
+                    evicted, otService.getResidentDocumentCount(), otService.getResidentBytes()));
+        }
+    }
+}
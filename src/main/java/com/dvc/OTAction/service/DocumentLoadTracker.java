@@ -0,0 +1,200 @@
+package com.dvc.OTAction.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Tracks load per document (op rate, active editors, average revision lag) and switches
+ * documents between NORMAL and HOT mode.
+ *
+ * A document goes HOT as soon as it crosses either enter threshold, and only goes back to NORMAL
+ * after it has stayed below both exit thresholds for the whole cool-down. The gap between the
+ * enter and exit thresholds keeps a document that hovers around the limit from flapping.
+ *
+ * HOT documents get their decoded history cached in OtService and their ops processed in
+ * batches on HotDocumentExecutor.
+ */
+@Service
+public class DocumentLoadTracker {
+
+    public enum Mode { NORMAL, HOT }
+
+    private static final Logger logger = Logger.getLogger(DocumentLoadTracker.class.getName());
+    private static final double RATE_SMOOTHING = 0.5;
+    private static final double LAG_SMOOTHING = 0.2;
+    private static final int MAX_EVENTS = 200;
+    private static final long FORGET_AFTER_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    private final OtService otService;
+    private final double enterOpsPerSecond;
+    private final int enterEditors;
+    private final double exitOpsPerSecond;
+    private final int exitEditors;
+    private final long coolDownNanos;
+    private final long editorWindowNanos;
+
+    private final Map<String, DocumentLoad> loadMap = new ConcurrentHashMap<>();
+    private final Deque<Map<String, Object>> switchEvents = new ArrayDeque<>();
+
+    public DocumentLoadTracker(OtService otService,
+                               @Value("${ot.hot.enter-ops-per-sec:20}") double enterOpsPerSecond,
+                               @Value("${ot.hot.enter-editors:8}") int enterEditors,
+                               @Value("${ot.hot.exit-ops-per-sec:5}") double exitOpsPerSecond,
+                               @Value("${ot.hot.exit-editors:4}") int exitEditors,
+                               @Value("${ot.hot.cooldown-ms:30000}") long coolDownMillis,
+                               @Value("${ot.hot.editor-window-ms:10000}") long editorWindowMillis) {
+        this.otService = otService;
+        this.enterOpsPerSecond = enterOpsPerSecond;
+        this.enterEditors = enterEditors;
+        this.exitOpsPerSecond = exitOpsPerSecond;
+        this.exitEditors = exitEditors;
+        this.coolDownNanos = TimeUnit.MILLISECONDS.toNanos(coolDownMillis);
+        this.editorWindowNanos = TimeUnit.MILLISECONDS.toNanos(editorWindowMillis);
+    }
+
+    /**
+     * Records one incoming op. revisionLag is how many revisions the client was behind the server.
+     */
+    public void recordOperation(String sessionId, String documentId, String clientId, int revisionLag) {
+        DocumentLoad load = loadMap.computeIfAbsent(documentKey(sessionId, documentId),
+                k -> new DocumentLoad(sessionId, documentId));
+        long now = System.nanoTime();
+        synchronized (load) {
+            load.opsInWindow++;
+            load.lastOpNanos = now;
+            load.averageLag = load.averageLag + LAG_SMOOTHING * (Math.max(0, revisionLag) - load.averageLag);
+            if (clientId != null) {
+                load.editors.put(clientId, now);
+            }
+        }
+    }
+
+    public boolean isHot(String sessionId, String documentId) {
+        DocumentLoad load = loadMap.get(documentKey(sessionId, documentId));
+        return load != null && load.mode == Mode.HOT;
+    }
+
+    @Scheduled(fixedDelayString = "${ot.hot.evaluate-interval-ms:1000}")
+    public void evaluate() {
+        long now = System.nanoTime();
+        for (Map.Entry<String, DocumentLoad> entry : loadMap.entrySet()) {
+            DocumentLoad load = entry.getValue();
+            Mode switchTo = null;
+            String reason = null;
+            synchronized (load) {
+                double seconds = Math.max(1e-3, (now - load.windowStartNanos) / 1e9);
+                load.opsPerSecond += RATE_SMOOTHING * (load.opsInWindow / seconds - load.opsPerSecond);
+                load.opsInWindow = 0;
+                load.windowStartNanos = now;
+                load.editors.values().removeIf(lastSeen -> now - lastSeen > editorWindowNanos);
+                int editors = load.editors.size();
+
+                if (load.mode == Mode.NORMAL) {
+                    if (load.opsPerSecond >= enterOpsPerSecond || editors >= enterEditors) {
+                        switchTo = Mode.HOT;
+                        reason = String.format("%.1f ops/s, %d editors", load.opsPerSecond, editors);
+                    } else if (now - load.lastOpNanos > FORGET_AFTER_NANOS) {
+                        loadMap.remove(entry.getKey(), load);
+                        continue;
+                    }
+                } else {
+                    if (load.opsPerSecond < exitOpsPerSecond && editors < exitEditors) {
+                        if (load.coolSinceNanos == 0) {
+                            load.coolSinceNanos = now;
+                        } else if (now - load.coolSinceNanos >= coolDownNanos) {
+                            switchTo = Mode.NORMAL;
+                            reason = String.format("cooled down: %.1f ops/s, %d editors", load.opsPerSecond, editors);
+                        }
+                    } else {
+                        load.coolSinceNanos = 0;
+                    }
+                }
+                if (switchTo != null) {
+                    load.mode = switchTo;
+                    load.modeSinceMillis = System.currentTimeMillis();
+                    load.coolSinceNanos = 0;
+                }
+            }
+            if (switchTo != null) {
+                onSwitch(load, switchTo, reason);
+            }
+        }
+    }
+
+    private void onSwitch(DocumentLoad load, Mode mode, String reason) {
+        logger.info(String.format("[Session: %s, Doc: %s] switched to %s (%s)",
+                load.sessionId, load.documentId, mode, reason));
+        otService.setHistoryCaching(load.sessionId, load.documentId, mode == Mode.HOT);
+
+        Map<String, Object> event = new HashMap<>();
+        event.put("sessionId", load.sessionId);
+        event.put("documentId", load.documentId);
+        event.put("mode", mode.name());
+        event.put("reason", reason);
+        event.put("timestamp", System.currentTimeMillis());
+        synchronized (switchEvents) {
+            switchEvents.addFirst(event);
+            if (switchEvents.size() > MAX_EVENTS) {
+                switchEvents.removeLast();
+            }
+        }
+    }
+
+    public List<Map<String, Object>> getDocumentLoads() {
+        List<Map<String, Object>> loads = new ArrayList<>();
+        for (DocumentLoad load : loadMap.values()) {
+            synchronized (load) {
+                Map<String, Object> mp = new HashMap<>();
+                mp.put("sessionId", load.sessionId);
+                mp.put("documentId", load.documentId);
+                mp.put("mode", load.mode.name());
+                mp.put("modeSince", load.modeSinceMillis);
+                mp.put("opsPerSecond", load.opsPerSecond);
+                mp.put("editors", load.editors.size());
+                mp.put("averageRevisionLag", load.averageLag);
+                loads.add(mp);
+            }
+        }
+        return loads;
+    }
+
+    public List<Map<String, Object>> getSwitchEvents() {
+        synchronized (switchEvents) {
+            return new ArrayList<>(switchEvents);
+        }
+    }
+
+    private String documentKey(String sessionId, String documentId) {
+        return sessionId + ":" + documentId;
+    }
+
+    private static class DocumentLoad {
+        private final String sessionId;
+        private final String documentId;
+        private final Map<String, Long> editors = new HashMap<>();
+        private volatile Mode mode = Mode.NORMAL;
+        private long modeSinceMillis = System.currentTimeMillis();
+        private int opsInWindow;
+        private long windowStartNanos = System.nanoTime();
+        private long lastOpNanos = System.nanoTime();
+        private long coolSinceNanos;
+        private double opsPerSecond;
+        private double averageLag;
+
+        DocumentLoad(String sessionId, String documentId) {
+            this.sessionId = sessionId;
+            this.documentId = documentId;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.dvc.OTAction.service;
+
+import com.dvc.OTAction.dto.AppliedOperation;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Dedicated executor for documents in HOT mode.
+ *
+ * Ops for a hot document are queued per document and drained in batches: one batch is
+ * processed under a single OtService lock acquisition (OtService.runBatch; not on a shared store),
+ * and the callbacks (broadcast / ACK) run after the lock has been released, with the ACKs of one
+ * client merged into one.
+ * At most one drain per document runs at a time, so ops keep their arrival order.
+ *
+ * A document keeps its queue until it is drained. Once the document has cooled down, its ops keep going
+ * through the queue (submitIfQueued) until then, so none of them can overtake the ones still waiting;
+ * after that the queue is removed and the ops run on the caller's thread again.
+ */
+@Service
+public class HotDocumentExecutor {
+
+    private static final Logger logger = Logger.getLogger(HotDocumentExecutor.class.getName());
+
+    private final OtService otService;
+    private final OperationBroadcaster broadcaster;
+    private final ExecutorService executor;
+    private final int maxBatch;
+    private final Map<String, DocumentQueue> queues = new ConcurrentHashMap<>();
+
+    public HotDocumentExecutor(OtService otService, OperationBroadcaster broadcaster,
+                               @Value("${ot.hot.executor-threads:4}") int threads,
+                               @Value("${ot.hot.max-batch:64}") int maxBatch) {
+        this.otService = otService;
+        this.broadcaster = broadcaster;
+        this.maxBatch = maxBatch;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "ot-hot-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void submit(String sessionId, String documentId, Supplier<AppliedOperation> work,
+                       Consumer<AppliedOperation> onApplied, Consumer<Exception> onFailure) {
+        enqueue(documentKey(sessionId, documentId), new PendingOperation(work, onApplied, onFailure), true);
+    }
+
+    /**
+     * Like submit, but only if the document still has a queue (it was hot and its ops have not all run yet).
+     * Returns false if it has none, the caller then runs the op itself.
+     */
+    public boolean submitIfQueued(String sessionId, String documentId, Supplier<AppliedOperation> work,
+                                  Consumer<AppliedOperation> onApplied, Consumer<Exception> onFailure) {
+        return enqueue(documentKey(sessionId, documentId), new PendingOperation(work, onApplied, onFailure), false);
+    }
+
+    public int getQueueCount() {
+        return queues.size();
+    }
+
+    private boolean enqueue(String key, PendingOperation operation, boolean create) {
+        // adding happens inside compute, so it cannot interleave with drain() removing an idle queue
+        DocumentQueue queue = queues.compute(key, (k, existing) -> {
+            if (existing == null && !create) {
+                return null;
+            }
+            DocumentQueue target = existing == null ? new DocumentQueue(k) : existing;
+            target.pending.add(operation);
+            return target;
+        });
+        if (queue == null) {
+            return false;
+        }
+        if (queue.scheduled.compareAndSet(false, true)) {
+            executor.execute(() -> drain(queue));
+        }
+        return true;
+    }
+
+    private void drain(DocumentQueue queue) {
+        List<PendingOperation> batch = new ArrayList<>();
+        PendingOperation next;
+        while (batch.size() < maxBatch && (next = queue.pending.poll()) != null) {
+            batch.add(next);
+        }
+
+        List<Object> results = new ArrayList<>(batch.size());
+        otService.runBatch(() -> {
+            for (PendingOperation pending : batch) {
+                try {
+                    results.add(pending.work.get());
+                } catch (Exception e) {
+                    results.add(e);
+                }
+            }
+        });
+
+        // a client that pipelined several ops into this batch gets one ACK for all of them
+        broadcaster.batchAcknowledgements(() -> {
+            for (int i = 0; i < batch.size(); i++) {
+                Object result = results.get(i);
+                try {
+                    if (result instanceof AppliedOperation applied) {
+                        batch.get(i).onApplied.accept(applied);
+                    } else {
+                        batch.get(i).onFailure.accept((Exception) result);
+                    }
+                } catch (RuntimeException e) {
+                    logger.warning("Hot document callback failed: " + e.getMessage());
+                }
+            }
+        });
+
+        queue.scheduled.set(false);
+        // something may have been queued after we stopped polling
+        if (!queue.pending.isEmpty() && queue.scheduled.compareAndSet(false, true)) {
+            executor.execute(() -> drain(queue));
+            return;
+        }
+        // drained: drop the queue, unless an op got in (or a drain got scheduled) in the meantime
+        queues.computeIfPresent(queue.key, (k, existing) ->
+                existing == queue && existing.pending.isEmpty() && !existing.scheduled.get() ? null : existing);
+    }
+
+    private String documentKey(String sessionId, String documentId) {
+        return sessionId.length() + ":" + sessionId + ":" + documentId;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private static class DocumentQueue {
+        private final String key;
+        private final Queue<PendingOperation> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        DocumentQueue(String key) {
+            this.key = key;
+        }
+    }
+
+    private record PendingOperation(Supplier<AppliedOperation> work,
+                                    Consumer<AppliedOperation> onApplied,
+                                    Consumer<Exception> onFailure) {
+    }
+}
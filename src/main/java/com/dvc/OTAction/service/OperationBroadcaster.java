@@ -0,0 +1,203 @@
+package com.dvc.OTAction.service;
+
+import com.dvc.OTAction.config.EchoSuppressionInterceptor;
+import com.dvc.OTAction.dto.AppliedOperation;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Sends applied ops to everyone on /topic/sessions and ACKs to their author on /topic/ack/{clientId}.
+ * Shared by the STOMP op handler and the HTTP ingest endpoint.
+ *
+ * The author does not get its own op back on /topic/sessions (see EchoSuppressionInterceptor); the ACK
+ * carries everything it needs instead: the revision the op got and the checksum after it. ACKs are
+ * cumulative: {"revision": r, "count": n} confirms the author's n oldest unconfirmed ops on that document,
+ * the last of which is at revision r. Inside batchAcknowledgements (hot document batches) a run of ops of one
+ * client is confirmed by a single ACK. It goes out before the broadcast of the next op from anyone else: that op
+ * was transformed past the ones the ACK confirms, and a client transforms every broadcast past the ops it still
+ * has unconfirmed. NACKs and slow-down hints from AdmissionControl use the same topic.
+ */
+@Service
+public class OperationBroadcaster {
+
+    // clientId on the broadcasts of ops other nodes applied to a shared store
+    public static final String REMOTE_CLIENT_ID = "remote";
+
+    private static final Logger logger = Logger.getLogger(OperationBroadcaster.class.getName());
+
+    private final SimpMessagingTemplate messagingTemplate;
+    // ACKs collected while the current thread is inside batchAcknowledgements
+    private final ThreadLocal<Map<String, PendingAck>> pendingAcks = new ThreadLocal<>();
+
+    public OperationBroadcaster(SimpMessagingTemplate messagingTemplate) {
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    /**
+     * originSocketSessionId is the websocket session the op came from and that should not get it back, null for none.
+     */
+    public void broadcast(String sessionId, String documentId, String clientId, AppliedOperation applied,
+                          String originSocketSessionId) {
+        Map<String, PendingAck> batch = pendingAcks.get();
+        if (batch != null) {
+            sendAcksExcept(batch, clientId);
+        }
+        // broadCastMessage, cursors go out on the presence topic instead
+        ConcurrentHashMap<String,Object> broadcastPayLoad = new ConcurrentHashMap<>();
+        broadcastPayLoad.put("documentId",documentId);
+        broadcastPayLoad.put("clientId",clientId);
+        broadcastPayLoad.put("operation",applied.getOperation().getOps());
+        broadcastPayLoad.put("sessionId",sessionId);
+        broadcastPayLoad.put("revision",applied.getRevision());
+        broadcastPayLoad.put("checksum",applied.getChecksum());
+        String allDestinations = "/topic/sessions";
+        if (originSocketSessionId == null) {
+            messagingTemplate.convertAndSend(allDestinations,broadcastPayLoad);
+            return;
+        }
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setHeader(EchoSuppressionInterceptor.ORIGIN_SESSION_HEADER, originSocketSessionId);
+        headers.setLeaveMutable(true);
+        messagingTemplate.convertAndSend(allDestinations,broadcastPayLoad,headers.getMessageHeaders());
+    }
+
+    /**
+     * Broadcasts ops other nodes appended to a shared store, as this node pulled them in (see OtService.pullRemoteOperations).
+     */
+    public void broadcastPulled(String sessionId, String documentId, List<AppliedOperation> pulled) {
+        for (AppliedOperation applied : pulled) {
+            broadcast(sessionId, documentId, REMOTE_CLIENT_ID, applied, null);
+        }
+    }
+
+    public void acknowledge(String sessionId, String documentId, String clientId, AppliedOperation applied) {
+        Map<String, PendingAck> batch = pendingAcks.get();
+        if (batch != null) {
+            batch.computeIfAbsent(sessionId + ":" + documentId + ":" + clientId,
+                    k -> new PendingAck(sessionId, documentId, clientId)).add(applied);
+            return;
+        }
+        PendingAck ack = new PendingAck(sessionId, documentId, clientId);
+        ack.add(applied);
+        send(ack);
+    }
+
+    /**
+     * Runs work and sends one cumulative ACK per client for everything it acknowledged.
+     */
+    public void batchAcknowledgements(Runnable work) {
+        if (pendingAcks.get() != null) {
+            work.run();
+            return;
+        }
+        Map<String, PendingAck> batch = new LinkedHashMap<>();
+        pendingAcks.set(batch);
+        try {
+            work.run();
+        } finally {
+            pendingAcks.remove();
+            batch.values().forEach(this::send);
+        }
+    }
+
+    /**
+     * Tells the author an op was not applied for a transient reason (admission limits, a full persistence queue)
+     * and should be resent after retryAfterMillis. Goes over the ACK topic so it stays ordered with the client's ACKs.
+     */
+    public void reject(String sessionId, String documentId, String clientId, int clientRevision,
+                       String reason, long retryAfterMillis) {
+        Map<String,Object> mp = new HashMap<>();
+        mp.put("NACK","nack");
+        mp.put("sessionId",sessionId);
+        mp.put("documentId",documentId);
+        mp.put("revision",clientRevision);
+        mp.put("reason",reason);
+        mp.put("retryAfterMs",retryAfterMillis);
+        messagingTemplate.convertAndSend("/topic/ack/" + clientId,mp);
+        logger.fine("Sent NACK (" + reason + ") to client [" + clientId + "]");
+    }
+
+    /**
+     * Tells the author an op was not applied and never will be (invalid revision, malformed op): reason "REJECTED"
+     * and no retryAfterMs. Resending it would fail again, the client should reload the document (/ot/init) and
+     * rebase its pending ops on it.
+     */
+    public void refuse(String sessionId, String documentId, String clientId, int clientRevision, String error) {
+        Map<String,Object> mp = new HashMap<>();
+        mp.put("NACK","nack");
+        mp.put("sessionId",sessionId);
+        mp.put("documentId",documentId);
+        mp.put("revision",clientRevision);
+        mp.put("reason","REJECTED");
+        mp.put("error",error);
+        messagingTemplate.convertAndSend("/topic/ack/" + clientId,mp);
+        logger.fine("Sent NACK (REJECTED) to client [" + clientId + "]");
+    }
+
+    /**
+     * Warns a client that it is close to its rate limit, before its ops start getting rejected.
+     */
+    public void slowDown(String sessionId, String documentId, String clientId) {
+        Map<String,Object> mp = new HashMap<>();
+        mp.put("SLOW_DOWN","slow down");
+        mp.put("sessionId",sessionId);
+        mp.put("documentId",documentId);
+        messagingTemplate.convertAndSend("/topic/ack/" + clientId,mp);
+    }
+
+    private void sendAcksExcept(Map<String, PendingAck> batch, String clientId) {
+        Iterator<PendingAck> acks = batch.values().iterator();
+        while (acks.hasNext()) {
+            PendingAck ack = acks.next();
+            if (!ack.clientId.equals(clientId)) {
+                acks.remove();
+                send(ack);
+            }
+        }
+    }
+
+    private void send(PendingAck ack) {
+        String ackDestination = "/topic/ack/" + ack.clientId;
+        Map<String,Object> mp = new HashMap<>();
+        mp.put("ACK","ack");
+        mp.put("sessionId",ack.sessionId);
+        mp.put("documentId",ack.documentId);
+        mp.put("revision",ack.revision);
+        mp.put("checksum",ack.checksum);
+        mp.put("count",ack.count);
+        messagingTemplate.convertAndSend(ackDestination,mp);
+        logger.fine("Sent ACK for " + ack.count + " op(s) up to revision " + ack.revision
+                + " to client [" + ack.clientId + "] at " + ackDestination);
+    }
+
+    private static class PendingAck {
+        private final String sessionId;
+        private final String documentId;
+        private final String clientId;
+        private int revision;
+        private String checksum;
+        private int count;
+
+        PendingAck(String sessionId, String documentId, String clientId) {
+            this.sessionId = sessionId;
+            this.documentId = documentId;
+            this.clientId = clientId;
+        }
+
+        void add(AppliedOperation applied) {
+            revision = applied.getRevision();
+            checksum = applied.getChecksum();
+            count++;
+        }
+    }
+}
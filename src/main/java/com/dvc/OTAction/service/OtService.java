@@ -1,17 +1,43 @@
 package com.dvc.OTAction.service;
 
+import com.dvc.OTAction.dto.AppliedOperation;
+import com.dvc.OTAction.dto.ContentRange;
 import com.dvc.OTAction.dto.TextOperation;
+import com.dvc.OTAction.dto.VersionedContent;
+import com.dvc.OTAction.dto.VersionedText;
+import com.dvc.OTAction.store.DocumentSnapshot;
+import com.dvc.OTAction.store.DocumentStore;
+import com.dvc.OTAction.store.RevisionConflictException;
+import com.dvc.OTAction.utils.ChunkedText;
 import com.dvc.OTAction.utils.OTUtils;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiPredicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -19,121 +45,1175 @@ import java.util.logging.Logger;
 public class OtService {
 
     private static final Logger logger = Logger.getLogger(OtService.class.getName());
+    private static final int MAX_LOAD_ATTEMPTS = 3;
+    // clients per document whose pipelining state is kept, see ClientFrame
+    private static final int MAX_CLIENT_FRAMES = 256;
+    // appends to a shared store that may lose to other nodes before an op is given up (retryable)
+    private static final int MAX_APPEND_ATTEMPTS = 5;
+    private static final int WRITE_LOCK_STRIPES = 64;
 
     private final OTUtils otUtils;
     private final ObjectMapper objectMapper;
 
-    // In-memory doc & history for demo — replace with Redis later
-    private final Map<String, String> docContentMap = new HashMap<>();
+    // Resident docs & history; ops are appended to the DocumentStore (ot.store: file, redis or memory).
+    // Idle documents are evicted to it as snapshots and reloaded on first access.
+    // content is immutable ChunkedText, so readers can take a version and flatten it outside the lock
+    private final Map<String, ChunkedText> docContentMap = new ConcurrentHashMap<>();
     private final Map<String, List<String>> historyMap = new HashMap<>();
     private final ReentrantLock reentrantLock = new ReentrantLock();
+    // shared store only: serializes the writes of a document across its store round trip, see receiveShared
+    private final ReentrantLock[] writeLocks = new ReentrantLock[WRITE_LOCK_STRIPES];
+    // Decoded tail of the history, only kept for hot documents (see DocumentLoadTracker)
+    private final Map<String, DecodedHistory> decodedHistoryMap = new HashMap<>();
+    private final int historyCacheSize;
+    // Documents currently held in the maps above, least recently used first
+    private final LinkedHashMap<String, ResidentDocument> residentDocuments = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong residentBytes = new AtomicLong();
+    // every document that has been resident at some point, see preload()
+    private final Set<String> loadedSinceBoot = ConcurrentHashMap.newKeySet();
+    // documents dropped so far, guarded by reentrantLock; a load read outside the lock is stale if this moved (see load)
+    private long unloads;
+    private final long maxResidentBytes;
+    // Evictions write their snapshot outside reentrantLock; this keeps two of them from racing on the same document.
+    // Over-budget evictions run on budgetEvictor, off the op path
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final ExecutorService budgetEvictor;
+    private final AtomicBoolean budgetCheckScheduled = new AtomicBoolean();
+    private final DocumentStore documentStore;
+    private final PersistencePipeline pipeline;
+    // Content every checkpointInterval revisions, for getContentAt (see ResidentDocument.checkpoints)
+    private final int checkpointInterval;
+    private final int maxCheckpoints;
+    private final int parallelReplayThreshold;
+    // composes long replays (getContentAt)
+    private final ForkJoinPool parallelPool;
 
-    public OtService(OTUtils otUtils, ObjectMapper objectMapper) {
+    public OtService(OTUtils otUtils, ObjectMapper objectMapper, DocumentStore documentStore,
+                     PersistencePipeline pipeline,
+                     @Value("${ot.hot.history-cache-size:1024}") int historyCacheSize,
+                     @Value("${ot.eviction.max-resident-bytes:268435456}") long maxResidentBytes,
+                     @Value("${ot.checkpoint.interval:100}") int checkpointInterval,
+                     @Value("${ot.checkpoint.max-per-document:256}") int maxCheckpoints,
+                     @Value("${ot.checkpoint.parallel-threshold:1000}") int parallelReplayThreshold) {
         this.otUtils = otUtils;
         this.objectMapper = objectMapper;
+        this.documentStore = documentStore;
+        this.pipeline = pipeline;
+        this.historyCacheSize = historyCacheSize;
+        this.maxResidentBytes = maxResidentBytes;
+        this.checkpointInterval = Math.max(1, checkpointInterval);
+        this.maxCheckpoints = Math.max(2, maxCheckpoints);
+        this.parallelReplayThreshold = parallelReplayThreshold;
+        for (int i = 0; i < writeLocks.length; i++) {
+            writeLocks[i] = new ReentrantLock();
+        }
+        this.parallelPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        this.budgetEvictor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "ot-evict");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Transforms the op against everything the client has not seen yet, applies it to the chunked content
+     * and assigns it the next revision. Writing it to the op log is handed to PersistencePipeline, so the
+     * caller can broadcast / ACK right away. On a shared store the op is appended before it is applied instead,
+     * see receiveShared.
+     *
+     * Clients may pipeline: send further ops on top of ones not ACKed yet, still at the revision they last saw.
+     * Such an op already contains the client's own earlier ops, so it is only transformed against the other
+     * clients' ops, taken in the client's frame (see ClientFrame).
+     */
+    public AppliedOperation receiveOperation(String sessionId, String documentId, int clientRevision, TextOperation operation, String clientId) {
+        return receiveOperation(sessionId, documentId, clientRevision, operation, clientId, true);
     }
 
-    public TextOperation receiveOperation(String sessionId, String documentId, int clientRevision, TextOperation operation, String clientId) {
+    /**
+     * receiveOperation for writers that never pipeline (POST /ot/ingest): every op is based on exactly the
+     * document at clientRevision, so it is transformed against everything after it, the writer's own ops included.
+     */
+    public AppliedOperation receiveOperation(String sessionId, String documentId, int clientRevision, TextOperation operation,
+                                             String clientId, boolean pipelined) {
+        String key = documentKey(sessionId, documentId);
+        load(sessionId, documentId);
+        // never wait for the pipeline while holding the lock (hot document batches), that would stall every document.
+        // On a shared store nothing is queued, the reservation only keeps eviction away
+        pipeline.reserve(key, !reentrantLock.isHeldByCurrentThread());
+        boolean submitted = false;
         try {
-            reentrantLock.lock();
+            if (documentStore.isShared()) {
+                return receiveShared(sessionId, documentId, clientRevision, operation, clientId, pipelined);
+            }
+            try {
+                reentrantLock.lock();
+                PreparedOperation prepared = prepare(sessionId, documentId, clientRevision, operation, clientId, pipelined);
+                commit(sessionId, documentId, prepared, clientId, pipelined);
+                int revision = prepared.revision();
+                String serialized = prepared.serialized();
+                pipeline.submit(key, () -> documentStore.appendOperation(sessionId, documentId, revision, serialized),
+                        failure -> appendFailed(sessionId, documentId, revision, failure));
+                submitted = true;
+                return prepared.toApplied(List.of());
+            } finally {
+                reentrantLock.unlock();
+            }
+        } catch (Exception e) {
+            logger.warning(e.getMessage());
+            throw new RuntimeException(("Failed to process operation for client " + clientId+clientRevision + " " + getServerRevision(sessionId,documentId)),e);
+        } finally {
+            if (!submitted) {
+                pipeline.release(key);
+            }
+        }
+    }
 
-            String currentContent = getContent(sessionId, documentId);
-            int serverRevision = getServerRevision(sessionId, documentId);
+    /**
+     * receiveOperation on a store other nodes write to as well. The op is appended before it is applied here,
+     * so nothing gets ACKed or broadcast that the store has not taken. If another node got to the revision first,
+     * its ops are pulled in, the op is transformed against them and appended again. Those ops come back with the
+     * result (AppliedOperation.getPulledOperations) to be broadcast before it.
+     *
+     * Writes of one document are serialized by its write lock rather than by reentrantLock, so a store round trip
+     * only holds up that document. Must not run under runExclusive, see runBatch.
+     */
+    private AppliedOperation receiveShared(String sessionId, String documentId, int clientRevision, TextOperation operation,
+                                           String clientId, boolean pipelined) {
+        if (reentrantLock.isHeldByCurrentThread()) {
+            throw new IllegalStateException("Ops on a shared store cannot be applied under runExclusive");
+        }
+        ReentrantLock writeLock = writeLock(sessionId, documentId);
+        try {
+            writeLock.lock();
+            List<AppliedOperation> pulled = new ArrayList<>();
+            PreparedOperation prepared = null;
+            for (int attempt = 0; attempt < MAX_APPEND_ATTEMPTS; attempt++) {
+                if (prepared == null) {
+                    try {
+                        reentrantLock.lock();
+                        prepared = prepare(sessionId, documentId, clientRevision, operation, clientId, pipelined);
+                    } finally {
+                        reentrantLock.unlock();
+                    }
+                }
+                try {
+                    documentStore.appendOperation(sessionId, documentId, prepared.revision(), prepared.serialized());
+                } catch (RevisionConflictException e) {
+                    logger.fine(String.format("[Session: %s, Doc: %s] Revision %d taken by another node, catching up: %s",
+                            sessionId, documentId, prepared.revision(), e.getMessage()));
+                    pulled.addAll(pullRemote(sessionId, documentId));
+                    prepared = null;
+                    continue;
+                } catch (UncheckedIOException e) {
+                    // the append may have gone through; the same one again is recognized as such by the store
+                    logger.warning(String.format("[Session: %s, Doc: %s] Append of revision %d failed, retrying: %s",
+                            sessionId, documentId, prepared.revision(), e.getMessage()));
+                    continue;
+                }
+                try {
+                    reentrantLock.lock();
+                    commit(sessionId, documentId, prepared, clientId, pipelined);
+                } finally {
+                    reentrantLock.unlock();
+                }
+                return prepared.toApplied(pulled);
+            }
+            // other nodes keep winning the race or the store is unreachable; retryable, the client sends the op again later.
+            // If the last append did go through, the next pull brings it in like any other node's op
+            throw new RejectedExecutionException(String.format(
+                    "[Session: %s, Doc: %s] Could not append the op after %d attempts", sessionId, documentId, MAX_APPEND_ATTEMPTS));
+        } finally {
+            writeLock.unlock();
+        }
+    }
 
-            if (clientRevision < 0 || clientRevision > serverRevision) {
-                throw new IllegalArgumentException(
-                        String.format("[Session: %s, Doc: %s] Invalid client revision: %d. Server revision is: %d.",
-                                sessionId, documentId, clientRevision, serverRevision)
-                );
+    /**
+     * Transforms the op and computes everything it changes, without changing anything yet. Must be called with
+     * the lock held.
+     */
+    private PreparedOperation prepare(String sessionId, String documentId, int clientRevision, TextOperation operation,
+                                      String clientId, boolean pipelined) {
+        ensureLoaded(sessionId, documentId);
+
+        int serverRevision = getServerRevision(sessionId, documentId);
+
+        if (clientRevision < 0 || clientRevision > serverRevision) {
+            throw new IllegalArgumentException(
+                    String.format("[Session: %s, Doc: %s] Invalid client revision: %d. Server revision is: %d.",
+                            sessionId, documentId, clientRevision, serverRevision)
+            );
+        }
+
+        ResidentDocument resident = resident(sessionId, documentId);
+        ClientFrame frame = pipelined && clientId != null ? resident.clientFrames.get(clientId) : null;
+        TextOperation transformedOperation = operation;
+        // the other clients' ops after clientRevision as this client sees them once it has this op
+        List<FrameEntry> foreign = new ArrayList<>();
+        int historyFrom = clientRevision;
+        if (frame != null && clientRevision >= frame.fromRevision && clientRevision < frame.lastRevision) {
+            // the client's ops up to frame.lastRevision are in this op's base already; what it has not seen
+            // of the others up to there is in the frame, transformed past them
+            for (FrameEntry entry : frame.entries) {
+                if (entry.revision() > clientRevision) {
+                    List<TextOperation> result = OTUtils.transform(transformedOperation, entry.operation());
+                    transformedOperation = result.get(0);
+                    foreign.add(new FrameEntry(entry.revision(), result.get(1)));
+                }
+            }
+            historyFrom = frame.lastRevision;
+        }
+
+        List<TextOperation> concurrentOps = readHistory(sessionId, documentId, historyFrom, serverRevision);
+
+        logger.fine(String.format("[Session: %s, Doc: %s] Found %d concurrent operations to transform against.",
+                sessionId, documentId, foreign.size() + concurrentOps.size()));
+
+        for (int i = 0; i < concurrentOps.size(); i++) {
+            TextOperation concurrentOp = concurrentOps.get(i);
+            logger.fine(String.format("[Session: %s, Doc: %s] Transforming against concurrent op: %s",
+                    sessionId, documentId, concurrentOp));
+            List<TextOperation> result = OTUtils.transform(transformedOperation, concurrentOp);
+            transformedOperation = result.get(0);
+            foreign.add(new FrameEntry(historyFrom + i + 1, result.get(1)));
+            logger.fine(String.format("[Session: %s, Doc: %s] Result after transform: %s",
+                    sessionId, documentId, transformedOperation));
+        }
+
+        // only touches the chunks the op covers, and keeps the checksum up to date on the way
+        ChunkedText currentContent = docContentMap.getOrDefault(contentKey(sessionId, documentId), ChunkedText.empty());
+        ChunkedText newContent = currentContent.apply(transformedOperation);
+        return new PreparedOperation(clientRevision, serverRevision + 1, transformedOperation,
+                serialize(transformedOperation), currentContent, newContent, foreign);
+    }
+
+    /**
+     * Makes a prepared op the new head. Must be called with the lock held, and nothing may have been applied
+     * to the document since prepare.
+     */
+    private void commit(String sessionId, String documentId, PreparedOperation prepared, String clientId, boolean pipelined) {
+        int revision = prepared.revision();
+        if (getServerRevision(sessionId, documentId) != revision - 1) {
+            throw new IllegalStateException(String.format("[Session: %s, Doc: %s] Revision %d was prepared at %d, but the document is at %d",
+                    sessionId, documentId, revision, revision - 1, getServerRevision(sessionId, documentId)));
+        }
+        ResidentDocument resident = resident(sessionId, documentId);
+        appendHistory(sessionId, documentId, prepared.operation(), prepared.serialized());
+        docContentMap.put(contentKey(sessionId, documentId), prepared.content());
+        resident.resize(2L * (prepared.content().length() - prepared.previousContent().length()));
+
+        if (pipelined && clientId != null) {
+            resident.clientFrames.put(clientId, new ClientFrame(prepared.clientRevision(), revision, prepared.foreign()));
+        }
+        if (revision % checkpointInterval == 0) {
+            resident.addCheckpoint(revision, prepared.content());
+        }
+        requestBudgetCheck();
+    }
+
+    private record PreparedOperation(int clientRevision, int revision, TextOperation operation, String serialized,
+                                     ChunkedText previousContent, ChunkedText content, List<FrameEntry> foreign) {
+
+        AppliedOperation toApplied(List<AppliedOperation> pulled) {
+            List<TextOperation> unseen = new ArrayList<>(foreign.size());
+            for (FrameEntry entry : foreign) {
+                unseen.add(entry.operation());
             }
+            return new AppliedOperation(operation, revision, content.checksum(), unseen, pulled);
+        }
+    }
 
-            List<TextOperation> concurrentOps = new ArrayList<>();
+    /**
+     * Applies what other nodes appended to a shared store after the resident revision, and returns those ops
+     * as applied here. Must be called with the document's write lock held and without reentrantLock; the store
+     * is read outside of it.
+     */
+    private List<AppliedOperation> pullRemote(String sessionId, String documentId) {
+        int revision = getServerRevision(sessionId, documentId);
+        List<String> remote = documentStore.readOperations(sessionId, documentId, revision);
+        List<TextOperation> operations = new ArrayList<>(remote.size());
+        for (String opJson : remote) {
+            operations.add(parseOperation(sessionId, documentId, opJson));
+        }
+        List<AppliedOperation> pulled = new ArrayList<>(remote.size());
+        if (remote.isEmpty()) {
+            return pulled;
+        }
+        try {
+            reentrantLock.lock();
+            ensureLoaded(sessionId, documentId);
+            if (getServerRevision(sessionId, documentId) != revision) {
+                // evicted and reloaded meanwhile, the reload read these ops already
+                return pulled;
+            }
+            ResidentDocument resident = resident(sessionId, documentId);
+            ChunkedText content = docContentMap.getOrDefault(contentKey(sessionId, documentId), ChunkedText.empty());
+            for (int i = 0; i < operations.size(); i++) {
+                ChunkedText next = content.apply(operations.get(i));
+                appendHistory(sessionId, documentId, operations.get(i), remote.get(i));
+                docContentMap.put(contentKey(sessionId, documentId), next);
+                resident.resize(2L * (next.length() - content.length()));
+                content = next;
+                int applied = revision + i + 1;
+                if (applied % checkpointInterval == 0) {
+                    resident.addCheckpoint(applied, next);
+                }
+                pulled.add(new AppliedOperation(operations.get(i), applied, next.checksum()));
+            }
+            requestBudgetCheck();
+        } finally {
+            reentrantLock.unlock();
+        }
+        logger.fine(String.format("[Session: %s, Doc: %s] Pulled %d ops from other nodes, now at revision %d",
+                sessionId, documentId, pulled.size(), revision + pulled.size()));
+        return pulled;
+    }
 
-            if (clientRevision < serverRevision) {
+    /**
+     * For a shared store (see DocumentStore.isShared): pulls in what other nodes appended to the resident documents
+     * and hands each document's new ops to listener, which runs under the document's write lock, so they go out
+     * before any later local op of that document. Documents busy with a write are skipped, that write catches up
+     * by itself if it has to. Returns how many ops were pulled.
+     */
+    public int pullRemoteOperations(RemoteOperationsListener listener) {
+        if (!documentStore.isShared()) {
+            return 0;
+        }
+        List<String[]> documents = new ArrayList<>();
+        try {
+            reentrantLock.lock();
+            for (ResidentDocument resident : residentDocuments.values()) {
+                documents.add(new String[] { resident.sessionId, resident.documentId });
+            }
+        } finally {
+            reentrantLock.unlock();
+        }
+        int count = 0;
+        for (String[] document : documents) {
+            String sessionId = document[0];
+            String documentId = document[1];
+            String key = documentKey(sessionId, documentId);
+            ReentrantLock writeLock = writeLock(sessionId, documentId);
+            if (!writeLock.tryLock()) {
+                continue;
+            }
+            try {
+                if (!isResident(key)) {
+                    continue;
+                }
+                // keeps eviction away, like for a local write
+                pipeline.reserve(key, false);
                 try {
-                    String hKey = historyKey(sessionId, documentId);
-                    List<String> allRawOperations = historyMap.get(hKey);
-
-                    if (allRawOperations != null && !allRawOperations.isEmpty()) {
-                        List<String> rawOperations = allRawOperations.subList(clientRevision, serverRevision);
-
-                        for (String opJson : rawOperations) {
-                            try {
-                                List<Object> opsList = objectMapper.readValue(opJson, new TypeReference<List<Object>>() {});
-                                concurrentOps.add(new TextOperation(opsList));
-                            } catch (JsonProcessingException e) {
-                                logger.warning(String.format(
-                                        "[Session: %s, Doc: %s] Failed to parse operation JSON from history: %s. JSON: %s",
-                                        sessionId, documentId, e.getMessage(), opJson));
-                                throw new IllegalStateException("Invalid operation format found in history for key: " + hKey, e);
-                            }
-                        }
+                    List<AppliedOperation> pulled = pullRemote(sessionId, documentId);
+                    if (!pulled.isEmpty()) {
+                        listener.onPulled(sessionId, documentId, pulled);
+                        count += pulled.size();
                     }
-                } catch (Exception e) {
-                    logger.log(Level.SEVERE, String.format(
-                            "[Session: %s, Doc: %s] Error getting concurrent ops (rev %d to %d): %s",
-                            sessionId, documentId, clientRevision, serverRevision, e.getMessage()), e);
-                    throw new RuntimeException(e);
+                } finally {
+                    pipeline.release(key);
                 }
+            } catch (RuntimeException e) {
+                logger.log(Level.WARNING, String.format("[Session: %s, Doc: %s] Failed to pull ops from other nodes: %s",
+                        sessionId, documentId, e.getMessage()), e);
+            } finally {
+                writeLock.unlock();
             }
+        }
+        return count;
+    }
 
-            logger.fine(String.format("[Session: %s, Doc: %s] Found %d concurrent operations to transform against.",
-                    sessionId, documentId, concurrentOps.size()));
+    public interface RemoteOperationsListener {
+        void onPulled(String sessionId, String documentId, List<AppliedOperation> operations);
+    }
 
-            TextOperation transformedOperation = operation;
-            for (TextOperation concurrentOp : concurrentOps) {
-                logger.fine(String.format("[Session: %s, Doc: %s] Transforming against concurrent op: %s",
-                        sessionId, documentId, concurrentOp));
-                List<TextOperation> result = OTUtils.transform(transformedOperation, concurrentOp);
-                transformedOperation = result.get(0);
-                logger.fine(String.format("[Session: %s, Doc: %s] Result after transform: %s",
-                        sessionId, documentId, transformedOperation));
+    private boolean isResident(String key) {
+        try {
+            reentrantLock.lock();
+            return residentDocuments.containsKey(key);
+        } finally {
+            reentrantLock.unlock();
+        }
+    }
+
+    private ReentrantLock writeLock(String sessionId, String documentId) {
+        return writeLocks[Math.floorMod(documentKey(sessionId, documentId).hashCode(), WRITE_LOCK_STRIPES)];
+    }
+
+    /**
+     * Returns the operations that took the document from fromRevision to the current head, in order.
+     */
+    public List<TextOperation> getOperations(String sessionId, String documentId, int fromRevision) {
+        load(sessionId, documentId);
+        try {
+            reentrantLock.lock();
+            ensureLoaded(sessionId, documentId);
+            int serverRevision = getServerRevision(sessionId, documentId);
+            if (fromRevision < 0 || fromRevision > serverRevision) {
+                throw new IllegalArgumentException(
+                        String.format("[Session: %s, Doc: %s] Invalid revision: %d. Server revision is: %d.",
+                                sessionId, documentId, fromRevision, serverRevision));
             }
+            return readHistory(sessionId, documentId, fromRevision, serverRevision);
+        } finally {
+            reentrantLock.unlock();
+        }
+    }
 
-            String newContent = OTUtils.apply(currentContent, transformedOperation);
-            saveContent(sessionId, documentId, newContent);
-            saveHistoryOp(sessionId, documentId, transformedOperation);
+    /**
+     * Runs several calls against this service under a single lock acquisition.
+     * The lock is reentrant, so receiveOperation etc. can be called from inside.
+     */
+    public void runExclusive(Runnable work) {
+        try {
+            reentrantLock.lock();
+            work.run();
+        } finally {
+            reentrantLock.unlock();
+        }
+    }
 
-            return transformedOperation;
+    /**
+     * Runs a batch of receiveOperation calls: under runExclusive, except on a shared store, where every op
+     * waits for a store round trip that must not hold up the other documents.
+     */
+    public void runBatch(Runnable work) {
+        if (documentStore.isShared()) {
+            work.run();
+        } else {
+            runExclusive(work);
+        }
+    }
 
-        } catch (Exception e) {;
-            logger.warning(e.getMessage());
-            throw new RuntimeException(("Failed to process operation for client " + clientId+clientRevision + " " + getServerRevision(sessionId,documentId)),e);
+    /**
+     * Turns caching of decoded history ops on or off for one document. While it is on,
+     * transforming a lagging client's op does not re-parse the concurrent ops from JSON.
+     */
+    public void setHistoryCaching(String sessionId, String documentId, boolean enabled) {
+        try {
+            reentrantLock.lock();
+            String hKey = historyKey(sessionId, documentId);
+            if (enabled) {
+                decodedHistoryMap.computeIfAbsent(hKey, k -> new DecodedHistory(getServerRevision(sessionId, documentId)));
+            } else {
+                decodedHistoryMap.remove(hKey);
+            }
         } finally {
             reentrantLock.unlock();
         }
     }
 
+    private List<TextOperation> readHistory(String sessionId, String documentId, int fromRevision, int toRevision) {
+        List<TextOperation> operations = new ArrayList<>();
+        if (fromRevision >= toRevision) {
+            return operations;
+        }
+        DecodedHistory decoded = decodedHistoryMap.get(historyKey(sessionId, documentId));
+        int decodedFrom = decoded == null ? toRevision : Math.min(toRevision, Math.max(fromRevision, decoded.firstRevision));
+        try {
+            String hKey = historyKey(sessionId, documentId);
+            List<String> allRawOperations = historyMap.get(hKey);
+
+            if (allRawOperations != null && !allRawOperations.isEmpty() && fromRevision < decodedFrom) {
+                List<String> rawOperations = allRawOperations.subList(fromRevision, decodedFrom);
+
+                for (String opJson : rawOperations) {
+                    operations.add(parseOperation(sessionId, documentId, opJson));
+                }
+            }
+        } catch (Exception e) {
+            logger.log(Level.SEVERE, String.format(
+                    "[Session: %s, Doc: %s] Error getting concurrent ops (rev %d to %d): %s",
+                    sessionId, documentId, fromRevision, toRevision, e.getMessage()), e);
+            throw new RuntimeException(e);
+        }
+        if (decodedFrom < toRevision) {
+            operations.addAll(decoded.operations.subList(decodedFrom - decoded.firstRevision, toRevision - decoded.firstRevision));
+        }
+        return operations;
+    }
+
+    private TextOperation parseOperation(String sessionId, String documentId, String opJson) {
+        try {
+            List<Object> opsList = objectMapper.readValue(opJson, new TypeReference<List<Object>>() {});
+            return new TextOperation(opsList);
+        } catch (JsonProcessingException e) {
+            logger.warning(String.format(
+                    "[Session: %s, Doc: %s] Failed to parse operation JSON from history: %s. JSON: %s",
+                    sessionId, documentId, e.getMessage(), opJson));
+            throw new IllegalStateException("Invalid operation format found in history for key: "
+                    + historyKey(sessionId, documentId), e);
+        }
+    }
+
     public String getContent(String sessionId, String documentId) {
-        return docContentMap.getOrDefault(contentKey(sessionId, documentId), "");
+        return getDocument(sessionId, documentId).getContent();
+    }
+
+    /**
+     * Returns the content at the current head revision together with that revision and its checksum.
+     */
+    public VersionedContent getDocument(String sessionId, String documentId) {
+        VersionedText head = getText(sessionId, documentId);
+        // immutable, so the (document sized) flattening can happen outside the lock
+        return new VersionedContent(head.getText().toString(), head.getRevision(), head.getText().checksum());
+    }
+
+    /**
+     * Returns the head text without flattening it. Only takes the lock long enough to grab the current version.
+     */
+    public VersionedText getText(String sessionId, String documentId) {
+        load(sessionId, documentId);
+        try {
+            reentrantLock.lock();
+            ensureLoaded(sessionId, documentId);
+            return new VersionedText(docContentMap.getOrDefault(contentKey(sessionId, documentId), ChunkedText.empty()),
+                    getServerRevision(sessionId, documentId));
+        } finally {
+            reentrantLock.unlock();
+        }
+    }
+
+    /**
+     * Returns up to length characters of the head content starting at offset.
+     */
+    public ContentRange getRange(String sessionId, String documentId, int offset, int length) {
+        VersionedText head = getText(sessionId, documentId);
+        ChunkedText text = head.getText();
+        if (offset < 0 || offset > text.length() || length < 0) {
+            throw new IllegalArgumentException(String.format(
+                    "[Session: %s, Doc: %s] Invalid range: offset %d, length %d. Document length is: %d.",
+                    sessionId, documentId, offset, length, text.length()));
+        }
+        int end = (int) Math.min(text.length(), (long) offset + length);
+        return new ContentRange(text.substring(offset, end), offset, text.lineOf(offset),
+                text.length(), text.lineCount(), head.getRevision());
+    }
+
+    /**
+     * Returns up to lineCount lines of the head content starting at the 0 based line fromLine, including their newlines.
+     */
+    public ContentRange getLines(String sessionId, String documentId, int fromLine, int lineCount) {
+        VersionedText head = getText(sessionId, documentId);
+        ChunkedText text = head.getText();
+        if (fromLine < 0 || fromLine >= text.lineCount() || lineCount < 0) {
+            throw new IllegalArgumentException(String.format(
+                    "[Session: %s, Doc: %s] Invalid line range: from %d, count %d. Document has %d lines.",
+                    sessionId, documentId, fromLine, lineCount, text.lineCount()));
+        }
+        int start = text.lineStart(fromLine);
+        int end = (long) fromLine + lineCount >= text.lineCount() ? text.length() : text.lineStart(fromLine + lineCount);
+        return new ContentRange(text.substring(start, end), start, fromLine,
+                text.length(), text.lineCount(), head.getRevision());
+    }
+
+    /**
+     * Returns the document as it was at the given revision (0 is the empty document).
+     *
+     * Starts from the nearest checkpoint at or below the revision and applies the ops after it. The ops are
+     * composed in segments that end on checkpoint boundaries, so every boundary crossed on the way becomes a
+     * new checkpoint and the next read in that area is short. Long ranges compose their segments in parallel
+     * on a fork-join pool; only copying the op references happens under the lock.
+     */
+    public VersionedContent getContentAt(String sessionId, String documentId, int revision) {
+        ResidentDocument resident;
+        int baseRevision;
+        ChunkedText base;
+        List<String> rawOperations;
+        load(sessionId, documentId);
+        try {
+            reentrantLock.lock();
+            ensureLoaded(sessionId, documentId);
+            int serverRevision = getServerRevision(sessionId, documentId);
+            if (revision < 0 || revision > serverRevision) {
+                throw new IllegalArgumentException(
+                        String.format("[Session: %s, Doc: %s] Invalid revision: %d. Server revision is: %d.",
+                                sessionId, documentId, revision, serverRevision));
+            }
+            ChunkedText head = docContentMap.getOrDefault(contentKey(sessionId, documentId), ChunkedText.empty());
+            if (revision == serverRevision) {
+                return new VersionedContent(head.toString(), revision, head.checksum());
+            }
+            resident = residentDocuments.get(documentKey(sessionId, documentId));
+            Entry<Integer, ChunkedText> checkpoint = resident == null ? null : resident.checkpoints.floorEntry(revision);
+            baseRevision = checkpoint == null ? 0 : checkpoint.getKey();
+            base = checkpoint == null ? ChunkedText.empty() : checkpoint.getValue();
+            rawOperations = new ArrayList<>(historyMap.get(historyKey(sessionId, documentId)).subList(baseRevision, revision));
+        } finally {
+            reentrantLock.unlock();
+        }
+        if (rawOperations.isEmpty()) {
+            return new VersionedContent(base.toString(), revision, base.checksum());
+        }
+
+        List<Integer> boundaries = new ArrayList<>();
+        boundaries.add(baseRevision);
+        for (int r = (baseRevision / checkpointInterval + 1) * checkpointInterval; r < revision; r += checkpointInterval) {
+            boundaries.add(r);
+        }
+        boundaries.add(revision);
+
+        TextOperation[] segments = new TextOperation[boundaries.size() - 1];
+        ComposeSegments compose = new ComposeSegments(sessionId, documentId, rawOperations, baseRevision, boundaries, segments, 0, segments.length);
+        if (rawOperations.size() >= parallelReplayThreshold && segments.length > 1) {
+            parallelPool.invoke(compose);
+        } else {
+            compose.compute();
+        }
+
+        ChunkedText content = base;
+        Map<Integer, ChunkedText> reached = new HashMap<>();
+        for (int i = 0; i < segments.length; i++) {
+            content = content.apply(segments[i]);
+            reached.put(boundaries.get(i + 1), content);
+        }
+        reached.remove(revision);
+        if (!reached.isEmpty()) {
+            try {
+                reentrantLock.lock();
+                // the document may have been evicted and reloaded meanwhile, then the checkpoints are just dropped
+                if (residentDocuments.get(documentKey(sessionId, documentId)) == resident && resident != null) {
+                    reached.forEach(resident::addCheckpoint);
+                }
+            } finally {
+                reentrantLock.unlock();
+            }
+        }
+        logger.fine(String.format("[Session: %s, Doc: %s] Rebuilt revision %d from checkpoint %d (%d ops, %d segments)",
+                sessionId, documentId, revision, baseRevision, rawOperations.size(), segments.length));
+        return new VersionedContent(content.toString(), revision, content.checksum());
     }
 
-    private void saveContent(String sessionId, String documentId, String content) {
-        docContentMap.put(contentKey(sessionId, documentId), content);
+    @PreDestroy
+    public void shutdown() {
+        parallelPool.shutdown();
+        budgetEvictor.shutdownNow();
+    }
+
+    private ResidentDocument resident(String sessionId, String documentId) {
+        return residentDocuments.computeIfAbsent(documentKey(sessionId, documentId), k -> {
+            loadedSinceBoot.add(k);
+            return new ResidentDocument(sessionId, documentId);
+        });
     }
 
     private String contentKey(String sessionId, String documentId) {
-        return sessionId + ":" + documentId + ":content";
+        return documentKey(sessionId, documentId) + ":content";
     }
 
     private String historyKey(String sessionId, String documentId) {
-        return sessionId + ":" + documentId + ":history";
+        return documentKey(sessionId, documentId) + ":history";
     }
 
-    public int getServerRevision(String sessionId, String documentId) {
-        List<String> history = historyMap.get(historyKey(sessionId, documentId));
-        return history == null ? 0 : history.size();
+    private String documentKey(String sessionId, String documentId) {
+        // length prefixed, ids may contain ':' themselves ("a:b" / "c" is not "a" / "b:c")
+        return sessionId.length() + ":" + sessionId + ":" + documentId;
     }
 
-    private void saveHistoryOp(String sessionId, String documentId, TextOperation op) {
-        String hKey = historyKey(sessionId, documentId);
-        historyMap.computeIfAbsent(hKey, k -> new ArrayList<>());
+    public int getServerRevision(String sessionId, String documentId) {
+        load(sessionId, documentId);
+        try {
+            reentrantLock.lock();
+            ensureLoaded(sessionId, documentId);
+            List<String> history = historyMap.get(historyKey(sessionId, documentId));
+            return history == null ? 0 : history.size();
+        } finally {
+            reentrantLock.unlock();
+        }
+    }
 
+    private String serialize(TextOperation op) {
         try {
-            String serialized = objectMapper.writeValueAsString(op.getOps());
-            historyMap.get(hKey).add(serialized);
+            return objectMapper.writeValueAsString(op.getOps());
         } catch (Exception e) {
             throw new RuntimeException("Failed to serialize operation", e);
         }
     }
+
+    private void appendHistory(String sessionId, String documentId, TextOperation op, String serialized) {
+        String hKey = historyKey(sessionId, documentId);
+        historyMap.computeIfAbsent(hKey, k -> new ArrayList<>()).add(serialized);
+        resident(sessionId, documentId).resize(2L * serialized.length());
+        DecodedHistory decoded = decodedHistoryMap.get(hKey);
+        if (decoded != null) {
+            decoded.append(op, historyCacheSize);
+        }
+    }
+
+    /**
+     * Writes every document that has not been touched since cutoffMillis (and that canEvict agrees to)
+     * to the DocumentStore and drops it from memory. Returns how many documents were evicted.
+     *
+     * Only picking the documents happens under the lock, the snapshots are written after it (see evict).
+     */
+    public int evictIdle(long cutoffMillis, BiPredicate<String, String> canEvict) {
+        try {
+            evictionLock.lock();
+            List<Eviction> evictions = new ArrayList<>();
+            try {
+                reentrantLock.lock();
+                for (ResidentDocument resident : new ArrayList<>(residentDocuments.values())) {
+                    if (resident.lastAccessMillis < cutoffMillis
+                            && pipeline.isIdle(documentKey(resident.sessionId, resident.documentId))
+                            && canEvict.test(resident.sessionId, resident.documentId)) {
+                        evictions.add(prepareEviction(resident));
+                    }
+                }
+            } finally {
+                reentrantLock.unlock();
+            }
+            int evicted = 0;
+            for (Eviction eviction : evictions) {
+                if (evict(eviction)) {
+                    evicted++;
+                }
+            }
+            return evicted;
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    public int getResidentDocumentCount() {
+        try {
+            reentrantLock.lock();
+            return residentDocuments.size();
+        } finally {
+            reentrantLock.unlock();
+        }
+    }
+
+    public long getResidentBytes() {
+        try {
+            reentrantLock.lock();
+            return residentBytes.get();
+        } finally {
+            reentrantLock.unlock();
+        }
+    }
+
+    /**
+     * Brings a document back from its snapshot plus op log if it is not in memory, reading the store before
+     * taking the lock, so a slow load only holds up its own callers. Installing the result takes the lock.
+     * If any document was dropped while the store was read, this one may have been loaded, changed and evicted
+     * meanwhile, so the read is thrown away and done again. Callers that already hold the lock (runExclusive)
+     * load under it in ensureLoaded.
+     */
+    private void load(String sessionId, String documentId) {
+        if (reentrantLock.isHeldByCurrentThread()) {
+            return;
+        }
+        String key = documentKey(sessionId, documentId);
+        for (int attempt = 0; attempt < MAX_LOAD_ATTEMPTS; attempt++) {
+            long unloadsBefore;
+            try {
+                reentrantLock.lock();
+                if (residentDocuments.containsKey(key)) {
+                    return;
+                }
+                unloadsBefore = unloads;
+            } finally {
+                reentrantLock.unlock();
+            }
+            StoredState stored = readStored(sessionId, documentId);
+            try {
+                reentrantLock.lock();
+                if (residentDocuments.containsKey(key)) {
+                    return; // someone else loaded it first
+                }
+                if (unloads == unloadsBefore) {
+                    installLoaded(sessionId, documentId, stored);
+                    return;
+                }
+            } finally {
+                reentrantLock.unlock();
+            }
+        }
+        // evictions kept racing the read; ensureLoaded reads it under the lock
+    }
+
+    /**
+     * Makes sure the document is resident. Must be called with the lock held; the public methods call load()
+     * first, so this only reads the store when the caller held the lock already or load() gave up.
+     */
+    private void ensureLoaded(String sessionId, String documentId) {
+        String key = documentKey(sessionId, documentId);
+        ResidentDocument resident = residentDocuments.get(key); // also bumps it in the LRU order
+        if (resident != null) {
+            resident.lastAccessMillis = System.currentTimeMillis();
+            return;
+        }
+        installLoaded(sessionId, documentId, readStored(sessionId, documentId));
+    }
+
+    /**
+     * Installs what readStored found. A document the store does not have becomes an empty resident one,
+     * so asking for it again (or for its revision) does not go back to the store. Must be called with the lock held.
+     */
+    private void installLoaded(String sessionId, String documentId, StoredState stored) {
+        if (stored == null) {
+            install(sessionId, documentId, new StoredState(new ArrayList<>(), ChunkedText.empty(), 0, 0));
+            return;
+        }
+        install(sessionId, documentId, stored);
+        logger.info(String.format("[Session: %s, Doc: %s] Reloaded at revision %d (%d ops replayed from the log)",
+                sessionId, documentId, stored.history().size(), stored.replayed()));
+        requestBudgetCheck();
+    }
+
+    public enum Preload { LOADED, ALREADY_LOADED, NO_ROOM }
+
+    /**
+     * Warm start: rebuilds a document from its snapshot plus op log without holding the lock, so many documents
+     * can be replayed in parallel, and only takes the lock to install the result. Documents that have been in
+     * memory since boot (e.g. loaded on demand because someone asked for them first) are left alone, their
+     * files may be older than what is in memory. Never evicts anything to make room.
+     */
+    public Preload preload(String sessionId, String documentId) {
+        String key = documentKey(sessionId, documentId);
+        if (loadedSinceBoot.contains(key)) {
+            return Preload.ALREADY_LOADED;
+        }
+        StoredState stored = readStored(sessionId, documentId);
+        try {
+            reentrantLock.lock();
+            if (loadedSinceBoot.contains(key) || stored == null) {
+                return Preload.ALREADY_LOADED;
+            }
+            if (residentBytes.get() + stored.bytes() > maxResidentBytes) {
+                return Preload.NO_ROOM;
+            }
+            install(sessionId, documentId, stored);
+            logger.fine(String.format("[Session: %s, Doc: %s] Preloaded at revision %d (%d ops replayed from the log)",
+                    sessionId, documentId, stored.history().size(), stored.replayed()));
+            return Preload.LOADED;
+        } finally {
+            reentrantLock.unlock();
+        }
+    }
+
+    /**
+     * Reads a document's snapshot and replays its op log tail. Touches no shared state, so it needs no lock.
+     */
+    private StoredState readStored(String sessionId, String documentId) {
+        Optional<DocumentSnapshot> snapshot = documentStore.load(sessionId, documentId);
+        int snapshotRevision = snapshot.map(DocumentSnapshot::getRevision).orElse(0);
+        List<String> tail = documentStore.readOperations(sessionId, documentId, snapshotRevision);
+        if (snapshot.isEmpty() && tail.isEmpty()) {
+            return null;
+        }
+        List<String> history = new ArrayList<>(snapshot.map(DocumentSnapshot::getHistory).orElse(List.of()));
+        ChunkedText content = ChunkedText.of(snapshot.map(DocumentSnapshot::getContent).orElse(""));
+        for (String opJson : tail) {
+            content = content.apply(parseOperation(sessionId, documentId, opJson));
+            history.add(opJson);
+        }
+        long historyBytes = 0;
+        for (String op : history) {
+            historyBytes += 2L * op.length();
+        }
+        return new StoredState(history, content, tail.size(), 2L * content.length() + historyBytes);
+    }
+
+    private void install(String sessionId, String documentId, StoredState stored) {
+        historyMap.put(historyKey(sessionId, documentId), stored.history());
+        docContentMap.put(contentKey(sessionId, documentId), stored.content());
+
+        ResidentDocument resident = resident(sessionId, documentId);
+        resident.addCheckpoint(stored.history().size(), stored.content());
+        resident.resize(stored.bytes());
+    }
+
+    private record StoredState(List<String> history, ChunkedText content, int replayed, long bytes) {
+    }
+
+    /**
+     * Schedules enforceResidentBudget on the evictor thread if the working set is over budget. Never blocks,
+     * so it can be called with the lock held.
+     */
+    private void requestBudgetCheck() {
+        if (residentBytes.get() <= maxResidentBytes || !budgetCheckScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            budgetEvictor.execute(() -> {
+                budgetCheckScheduled.set(false);
+                try {
+                    enforceResidentBudget();
+                } catch (RuntimeException e) {
+                    logger.log(Level.WARNING, "Failed to enforce the resident memory budget: " + e.getMessage(), e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            budgetCheckScheduled.set(false); // shutting down
+        }
+    }
+
+    /**
+     * Evicts least recently used documents until the working set fits into ot.eviction.max-resident-bytes.
+     * The most recently used document (the one being worked on right now) is never evicted.
+     */
+    public void enforceResidentBudget() {
+        try {
+            evictionLock.lock();
+            while (true) {
+                List<Eviction> evictions = new ArrayList<>();
+                try {
+                    reentrantLock.lock();
+                    long excess = residentBytes.get() - maxResidentBytes;
+                    List<ResidentDocument> lru = new ArrayList<>(residentDocuments.values());
+                    for (int i = 0; i < lru.size() - 1 && excess > 0; i++) {
+                        ResidentDocument resident = lru.get(i);
+                        if (pipeline.isIdle(documentKey(resident.sessionId, resident.documentId))) {
+                            evictions.add(prepareEviction(resident));
+                            excess -= resident.bytes.get();
+                        }
+                    }
+                } finally {
+                    reentrantLock.unlock();
+                }
+                boolean progress = false;
+                for (Eviction eviction : evictions) {
+                    progress |= evict(eviction);
+                }
+                if (!progress || residentBytes.get() <= maxResidentBytes) {
+                    return;
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Takes what a snapshot of the document needs. Must be called with the lock held; the history is copied,
+     * the content is immutable.
+     */
+    private Eviction prepareEviction(ResidentDocument resident) {
+        List<String> history = historyMap.getOrDefault(historyKey(resident.sessionId, resident.documentId), List.of());
+        return new Eviction(resident, new ArrayList<>(history),
+                docContentMap.getOrDefault(contentKey(resident.sessionId, resident.documentId), ChunkedText.empty()));
+    }
+
+    /**
+     * Writes the snapshot without holding the lock, so other documents keep going during the I/O, and then
+     * drops the document unless it was changed or evicted meanwhile. A failed write is logged and the
+     * document simply stays resident. Must be called with evictionLock held.
+     */
+    private boolean evict(Eviction eviction) {
+        ResidentDocument resident = eviction.resident();
+        String sessionId = resident.sessionId;
+        String documentId = resident.documentId;
+        try {
+            // never written to, nothing to save
+            if (!eviction.history().isEmpty()) {
+                documentStore.save(new DocumentSnapshot(sessionId, documentId, eviction.history().size(),
+                        eviction.content().toString(), eviction.history()));
+            }
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, String.format("[Session: %s, Doc: %s] Failed to write snapshot, keeping it resident: %s",
+                    sessionId, documentId, e.getMessage()), e);
+            return false;
+        }
+        try {
+            reentrantLock.lock();
+            String key = documentKey(sessionId, documentId);
+            List<String> history = historyMap.get(historyKey(sessionId, documentId));
+            int revision = history == null ? 0 : history.size();
+            if (resident.unloaded || revision != eviction.history().size() || !pipeline.isIdle(key)) {
+                // got an op while the snapshot was written; the op log has it, the next sweep tries again
+                return false;
+            }
+            unload(resident);
+            return true;
+        } finally {
+            reentrantLock.unlock();
+        }
+    }
+
+    private record Eviction(ResidentDocument resident, List<String> history, ChunkedText content) {
+    }
+
+    /**
+     * Drops a document whose snapshot has been written. Must be called with the lock held.
+     */
+    private void unload(ResidentDocument resident) {
+        drop(resident);
+        logger.info(String.format("[Session: %s, Doc: %s] Evicted to snapshot (%d bytes)",
+                resident.sessionId, resident.documentId, resident.bytes.get()));
+    }
+
+    private void drop(ResidentDocument resident) {
+        String sessionId = resident.sessionId;
+        String documentId = resident.documentId;
+        docContentMap.remove(contentKey(sessionId, documentId));
+        historyMap.remove(historyKey(sessionId, documentId));
+        decodedHistoryMap.remove(historyKey(sessionId, documentId));
+        residentDocuments.remove(documentKey(sessionId, documentId));
+        resident.unloaded = true;
+        unloads++;
+        pipeline.forget(documentKey(sessionId, documentId));
+        residentBytes.addAndGet(-resident.bytes.get());
+    }
+
+    /**
+     * Called by the pipeline when an append failed for good (I/O errors are retried there). Only stores that
+     * are not shared append this way, so nobody else wrote the revision; the store misses it until the next
+     * snapshot of the document, which carries the full history.
+     */
+    private void appendFailed(String sessionId, String documentId, int revision, RuntimeException failure) {
+        logger.log(Level.SEVERE, String.format("[Session: %s, Doc: %s] Failed to persist revision %d: %s",
+                sessionId, documentId, revision, failure.getMessage()), failure);
+    }
+
+    /**
+     * Parses and composes the ops of segments [from, to), splitting the work in halves on the fork-join pool.
+     */
+    private class ComposeSegments extends RecursiveAction {
+        private final String sessionId;
+        private final String documentId;
+        private final List<String> rawOperations;
+        private final int baseRevision;
+        private final List<Integer> boundaries;
+        private final TextOperation[] segments;
+        private final int from;
+        private final int to;
+
+        ComposeSegments(String sessionId, String documentId, List<String> rawOperations, int baseRevision,
+                        List<Integer> boundaries, TextOperation[] segments, int from, int to) {
+            this.sessionId = sessionId;
+            this.documentId = documentId;
+            this.rawOperations = rawOperations;
+            this.baseRevision = baseRevision;
+            this.boundaries = boundaries;
+            this.segments = segments;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1 && getPool() != null) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ComposeSegments(sessionId, documentId, rawOperations, baseRevision, boundaries, segments, from, mid),
+                        new ComposeSegments(sessionId, documentId, rawOperations, baseRevision, boundaries, segments, mid, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                int start = boundaries.get(i) - baseRevision;
+                int end = boundaries.get(i + 1) - baseRevision;
+                TextOperation composed = parseOperation(sessionId, documentId, rawOperations.get(start));
+                for (int j = start + 1; j < end; j++) {
+                    composed = OTUtils.compose(composed, parseOperation(sessionId, documentId, rawOperations.get(j)));
+                }
+                segments[i] = composed;
+            }
+        }
+    }
+
+    private class ResidentDocument {
+        private final String sessionId;
+        private final String documentId;
+        private final AtomicLong bytes = new AtomicLong();
+        private volatile long lastAccessMillis = System.currentTimeMillis();
+        // set once evicted; a reload gets a new ResidentDocument
+        private boolean unloaded;
+        // the latest ClientFrame of each client that sent ops, least recently active first
+        private final Map<String, ClientFrame> clientFrames = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ClientFrame> eldest) {
+                return size() > MAX_CLIENT_FRAMES;
+            }
+        };
+        // revision -> content at that revision. ChunkedText versions share every chunk an op did not touch,
+        // so a checkpoint only costs the chunks that changed since the previous one
+        private final TreeMap<Integer, ChunkedText> checkpoints = new TreeMap<>();
+        // what each checkpoint adds to bytes: its chunks not shared with the next newer checkpoint (or the head)
+        private final Map<Integer, Long> checkpointBytes = new HashMap<>();
+
+        ResidentDocument(String sessionId, String documentId) {
+            this.sessionId = sessionId;
+            this.documentId = documentId;
+        }
+
+        void addCheckpoint(int revision, ChunkedText content) {
+            checkpoints.put(revision, content);
+            if (checkpoints.size() <= maxCheckpoints) {
+                chargeCheckpoint(revision);
+                Integer older = checkpoints.lowerKey(revision);
+                if (older != null) {
+                    chargeCheckpoint(older);
+                }
+                return;
+            }
+            // drop every other one instead of the oldest, old revisions just get sparser
+            Iterator<Integer> revisions = checkpoints.keySet().iterator();
+            boolean drop = false;
+            while (revisions.hasNext()) {
+                int r = revisions.next();
+                if (r != revision && drop) {
+                    revisions.remove();
+                    Long charged = checkpointBytes.remove(r);
+                    if (charged != null) {
+                        addBytes(-charged);
+                    }
+                }
+                drop = !drop;
+            }
+            // every remaining checkpoint may have a different newer neighbour now
+            for (int r : checkpoints.keySet()) {
+                chargeCheckpoint(r);
+            }
+        }
+
+        private void chargeCheckpoint(int revision) {
+            Entry<Integer, ChunkedText> newer = checkpoints.higherEntry(revision);
+            ChunkedText neighbour = newer != null ? newer.getValue()
+                    : docContentMap.getOrDefault(contentKey(sessionId, documentId), ChunkedText.empty());
+            long charge = 2L * checkpoints.get(revision).unsharedLength(neighbour);
+            Long previous = checkpointBytes.put(revision, charge);
+            addBytes(charge - (previous == null ? 0 : previous));
+        }
+
+        private void addBytes(long delta) {
+            bytes.addAndGet(delta);
+            residentBytes.addAndGet(delta);
+        }
+
+        void resize(long delta) {
+            addBytes(delta);
+            lastAccessMillis = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * What the server knows about a client's view, as of the client's latest op (at lastRevision, sent at
+     * fromRevision): the other clients' ops after fromRevision, transformed past the client's own ops that
+     * the client had not seen ACKed yet. An op the client pipelines on top of those, still at a revision r
+     * in [fromRevision, lastRevision), is transformed against the entries after r and then against the
+     * history after lastRevision. The client transforms the broadcasts it gets past its pending ops the same
+     * way, so both sides end up with the same ops.
+     */
+    private record ClientFrame(int fromRevision, int lastRevision, List<FrameEntry> entries) {
+    }
+
+    private record FrameEntry(int revision, TextOperation operation) {
+    }
+
+    private static class DecodedHistory {
+        private int firstRevision;
+        private final List<TextOperation> operations = new ArrayList<>();
+
+        DecodedHistory(int firstRevision) {
+            this.firstRevision = firstRevision;
+        }
+
+        void append(TextOperation op, int maxSize) {
+            operations.add(op);
+            // trim in bulk so we don't shift the list on every op
+            if (operations.size() > 2 * maxSize) {
+                int drop = operations.size() - maxSize;
+                operations.subList(0, drop).clear();
+                firstRevision += drop;
+            }
+        }
+    }
 }
\ No newline at end of file
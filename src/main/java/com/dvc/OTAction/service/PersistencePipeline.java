@@ -0,0 +1,241 @@
+package com.dvc.OTAction.service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Second stage of op processing: after OtService has transformed an op, applied it to the chunked
+ * content and assigned its revision, the slow part (appending it to the op log on disk) runs here,
+ * off the critical section and after the op has already been broadcast / ACKed.
+ *
+ * Tasks of one document run strictly in submission (= revision) order; different documents run in
+ * parallel. Every document has at most ot.pipeline.max-pending tasks in flight. A submitter that
+ * finds the document full waits up to ot.pipeline.backpressure-timeout-ms and is rejected after that.
+ *
+ * A task that fails with an I/O error stays at the head of its document and is retried with backoff, so
+ * nothing behind it runs before it does (every append depends on the one before). Meanwhile the document
+ * fills up and its submitters are pushed back as above. Any other failure is final: it goes to the task's
+ * failure handler and the next task runs.
+ */
+@Component
+public class PersistencePipeline {
+
+    private static final Logger logger = Logger.getLogger(PersistencePipeline.class.getName());
+    private static final long RETRY_MIN_BACKOFF_MILLIS = 10;
+    private static final long RETRY_MAX_BACKOFF_MILLIS = 2000;
+
+    private final ExecutorService executor;
+    private final ScheduledExecutorService retryScheduler;
+    private final int maxPending;
+    private final long backpressureTimeoutMillis;
+    private final Map<String, Stage> stages = new ConcurrentHashMap<>();
+
+    private final AtomicLong delayed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public PersistencePipeline(@Value("${ot.pipeline.threads:4}") int threads,
+                                   @Value("${ot.pipeline.max-pending:1024}") int maxPending,
+                                   @Value("${ot.pipeline.backpressure-timeout-ms:5000}") long backpressureTimeoutMillis) {
+        this.maxPending = maxPending;
+        this.backpressureTimeoutMillis = backpressureTimeoutMillis;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "ot-persist-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ot-persist-retry");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Reserves a slot for one task of the document. With mayWait=false the caller is rejected
+     * straight away instead of waiting for the document to drain.
+     *
+     * @throws RejectedExecutionException if the document's pipeline stays full (the op may be resent later).
+     */
+    public void reserve(String documentKey, boolean mayWait) {
+        Semaphore permits = stage(documentKey).permits;
+        if (permits.tryAcquire()) {
+            return;
+        }
+        if (mayWait) {
+            delayed.incrementAndGet();
+            try {
+                if (permits.tryAcquire(backpressureTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        rejected.incrementAndGet();
+        throw new RejectedExecutionException("Document " + documentKey + " has " + maxPending
+                + " operations waiting to be persisted, try again later");
+    }
+
+    /**
+     * Gives back a reservation that was not used for a task.
+     */
+    public void release(String documentKey) {
+        stage(documentKey).permits.release();
+    }
+
+    /**
+     * Queues a task for the document. The caller must hold a reservation, which is released once the task has run.
+     * onFailure gets the exception if the task fails for good (anything but an I/O error, those are retried).
+     */
+    public void submit(String documentKey, Runnable task, Consumer<RuntimeException> onFailure) {
+        Stage stage = stage(documentKey);
+        stage.tasks.add(new Task(task, onFailure));
+        if (stage.scheduled.compareAndSet(false, true)) {
+            executor.execute(() -> drain(stage));
+        }
+    }
+
+    public boolean isIdle(String documentKey) {
+        Stage stage = stages.get(documentKey);
+        return stage == null || stage.permits.availablePermits() == maxPending;
+    }
+
+    /**
+     * Drops the bookkeeping of an idle document (used when it gets evicted).
+     */
+    public void forget(String documentKey) {
+        stages.computeIfPresent(documentKey, (k, stage) -> stage.permits.availablePermits() == maxPending ? null : stage);
+    }
+
+    public long getPendingCount() {
+        long pending = 0;
+        for (Stage stage : stages.values()) {
+            pending += maxPending - stage.permits.availablePermits();
+        }
+        return pending;
+    }
+
+    public long getDelayedCount() {
+        return delayed.get();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    public long getRetriedCount() {
+        return retried.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    private Stage stage(String documentKey) {
+        return stages.computeIfAbsent(documentKey, k -> new Stage(maxPending));
+    }
+
+    private void drain(Stage stage) {
+        Task task;
+        while ((task = stage.tasks.peek()) != null) {
+            try {
+                task.run().run();
+            } catch (RuntimeException e) {
+                if (isRetryable(e) && retryLater(stage, e)) {
+                    return; // still scheduled, the task stays at the head
+                }
+                fail(task, e);
+            }
+            stage.failures = 0;
+            stage.tasks.poll();
+            stage.permits.release();
+        }
+        stage.scheduled.set(false);
+        // something may have been queued after we stopped polling
+        if (!stage.tasks.isEmpty() && stage.scheduled.compareAndSet(false, true)) {
+            executor.execute(() -> drain(stage));
+        }
+    }
+
+    /**
+     * Runs the stage again after a backoff. False if shutting down, the task then fails for good.
+     */
+    private boolean retryLater(Stage stage, RuntimeException e) {
+        long backoff = Math.min(RETRY_MAX_BACKOFF_MILLIS, RETRY_MIN_BACKOFF_MILLIS << Math.min(stage.failures, 16));
+        int attempt = ++stage.failures; // before scheduling, the retry may start right away
+        try {
+            retryScheduler.schedule(() -> executor.execute(() -> drain(stage)), backoff, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException shuttingDown) {
+            return false;
+        }
+        retried.incrementAndGet();
+        logger.warning(String.format("Persistence task failed (attempt %d), retrying in %d ms: %s",
+                attempt, backoff, e.getMessage()));
+        return true;
+    }
+
+    private void fail(Task task, RuntimeException e) {
+        failed.incrementAndGet();
+        try {
+            task.onFailure().accept(e);
+        } catch (RuntimeException handlerFailure) {
+            logger.log(Level.SEVERE, "Persistence failure handler failed: " + handlerFailure.getMessage(), handlerFailure);
+        }
+    }
+
+    private static boolean isRetryable(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof UncheckedIOException || t instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // pending retries get one last attempt
+        retryScheduler.shutdown();
+        retryScheduler.awaitTermination(RETRY_MAX_BACKOFF_MILLIS * 2, TimeUnit.MILLISECONDS);
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    private record Task(Runnable run, Consumer<RuntimeException> onFailure) {
+    }
+
+    private static class Stage {
+        private final Semaphore permits;
+        private final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        // consecutive failures of the head task, only touched by the thread draining the stage
+        private int failures;
+
+        Stage(int maxPending) {
+            this.permits = new Semaphore(maxPending);
+        }
+    }
+}
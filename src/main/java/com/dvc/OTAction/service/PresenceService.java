@@ -0,0 +1,276 @@
+package com.dvc.OTAction.service;
+
+import com.dvc.OTAction.dto.AppliedOperation;
+import com.dvc.OTAction.dto.TextOperation;
+import com.dvc.OTAction.utils.OTUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Keeps every client's cursor / selection per document and broadcasts them on
+ * /topic/presence/{sessionId}/{documentId}, separately from the op stream.
+ *
+ * Positions are stored together with the revision they refer to and are moved forward
+ * through the op history lazily, right before they are sent. Updates are coalesced: a client
+ * that moves its cursor 100 times between two flushes produces one message, and no client
+ * is broadcast more often than ot.presence.max-rate-hz.
+ *
+ * Payload contract: only the character offsets under the keys "index", "anchor" and "head" are moved,
+ * at the top level of cursorPosition / selection and in the maps of a "ranges" list (multiple selections),
+ * e.g. {"index": 12} or {"anchor": 3, "head": 9}. Anything else ({"line": 2, "ch": 4}, client specific
+ * fields) is passed through unchanged.
+ *
+ * Presence never touches OtService's history.
+ */
+@Service
+public class PresenceService {
+
+    private static final Logger logger = Logger.getLogger(PresenceService.class.getName());
+
+    // keys of cursor / selection maps that hold character offsets
+    private static final Set<String> OFFSET_KEYS = Set.of("index", "anchor", "head");
+    private static final String RANGES_KEY = "ranges";
+
+    private final OtService otService;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final long minIntervalNanos;
+
+    // sessionId:documentId -> clientId -> presence
+    private final Map<String, Map<String, ClientPresence>> presenceMap = new ConcurrentHashMap<>();
+    // websocket session -> presence, so we can clean up on disconnect
+    private final Map<String, ClientPresence> socketSessions = new ConcurrentHashMap<>();
+
+    public PresenceService(OtService otService, SimpMessagingTemplate messagingTemplate,
+                           @Value("${ot.presence.max-rate-hz:20}") int maxRateHz) {
+        this.otService = otService;
+        this.messagingTemplate = messagingTemplate;
+        this.minIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, maxRateHz);
+    }
+
+    /**
+     * Records the latest cursor / selection of a client. Positions are relative to the document at {@code revision}.
+     * Updates for a revision the document does not have (yet) are dropped.
+     */
+    public void update(String sessionId, String documentId, String clientId, int revision,
+                       Map<String, Integer> cursorPosition, Map<String, Object> selection, String socketSessionId) {
+        if (sessionId == null || documentId == null || clientId == null) {
+            return;
+        }
+        int serverRevision = otService.getServerRevision(sessionId, documentId);
+        if (revision < 0 || revision > serverRevision) {
+            logger.fine(String.format("[Session: %s, Doc: %s] Dropped presence of client [%s] at revision %d, server revision is %d",
+                    sessionId, documentId, clientId, revision, serverRevision));
+            return;
+        }
+        store(sessionId, documentId, clientId, revision, cursorPosition, selection, socketSessionId);
+    }
+
+    /**
+     * Records the cursor / selection a client sent along with an op. They are relative to the client's document
+     * right after that op, which lacks the concurrent ops it had not seen; moving them through those puts them
+     * at the op's revision.
+     */
+    public void update(String sessionId, String documentId, String clientId, AppliedOperation applied,
+                       Map<String, Integer> cursorPosition, Map<String, Object> selection, String socketSessionId) {
+        if (sessionId == null || documentId == null || clientId == null) {
+            return;
+        }
+        Object cursor = cursorPosition;
+        Object selected = selection;
+        for (TextOperation operation : applied.getUnseenOperations()) {
+            cursor = transformPositions(cursor, operation);
+            selected = transformPositions(selected, operation);
+        }
+        store(sessionId, documentId, clientId, applied.getRevision(), cursor, selected, socketSessionId);
+    }
+
+    private void store(String sessionId, String documentId, String clientId, int revision,
+                       Object cursorPosition, Object selection, String socketSessionId) {
+        Map<String, ClientPresence> clients = presenceMap.computeIfAbsent(presenceKey(sessionId, documentId),
+                k -> new ConcurrentHashMap<>());
+        ClientPresence presence = clients.computeIfAbsent(clientId,
+                k -> new ClientPresence(sessionId, documentId, clientId));
+        synchronized (presence) {
+            presence.cursorPosition = cursorPosition;
+            presence.selection = selection;
+            presence.revision = revision;
+            presence.dirty = true;
+        }
+        if (socketSessionId != null) {
+            socketSessions.put(socketSessionId, presence);
+        }
+    }
+
+    /**
+     * True while at least one connected client has presence on the document.
+     */
+    public boolean hasClients(String sessionId, String documentId) {
+        Map<String, ClientPresence> clients = presenceMap.get(presenceKey(sessionId, documentId));
+        return clients != null && !clients.isEmpty();
+    }
+
+    @Scheduled(fixedDelayString = "${ot.presence.flush-interval-ms:25}")
+    public void flush() {
+        long now = System.nanoTime();
+        for (Map<String, ClientPresence> clients : presenceMap.values()) {
+            if (clients.isEmpty()) {
+                continue;
+            }
+            try {
+                catchUp(clients.values());
+            } catch (RuntimeException e) {
+                logger.warning("Failed to transform presence: " + e.getMessage());
+                continue;
+            }
+            for (ClientPresence presence : clients.values()) {
+                Map<String, Object> message = null;
+                synchronized (presence) {
+                    if (presence.dirty && now - presence.lastSentNanos >= minIntervalNanos) {
+                        message = presence.toMessage();
+                        presence.dirty = false;
+                        presence.lastSentNanos = now;
+                    }
+                }
+                if (message != null) {
+                    messagingTemplate.convertAndSend(presenceDestination(presence.sessionId, presence.documentId), message);
+                }
+            }
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        ClientPresence presence = socketSessions.remove(event.getSessionId());
+        if (presence == null) {
+            return;
+        }
+        Map<String, ClientPresence> clients = presenceMap.get(presenceKey(presence.sessionId, presence.documentId));
+        if (clients != null && clients.remove(presence.clientId, presence)) {
+            Map<String, Object> message = new HashMap<>();
+            message.put("clientId", presence.clientId);
+            message.put("documentId", presence.documentId);
+            message.put("sessionId", presence.sessionId);
+            message.put("left", true);
+            messagingTemplate.convertAndSend(presenceDestination(presence.sessionId, presence.documentId), message);
+        }
+        presenceMap.computeIfPresent(presenceKey(presence.sessionId, presence.documentId),
+                (k, v) -> v.isEmpty() ? null : v);
+    }
+
+    /**
+     * Moves every presence of one document up to the head revision. The history is read once,
+     * starting at the oldest revision any client is still at.
+     */
+    private void catchUp(Iterable<ClientPresence> clients) {
+        ClientPresence first = clients.iterator().next();
+        int headRevision = otService.getServerRevision(first.sessionId, first.documentId);
+        int oldestRevision = headRevision;
+        for (ClientPresence presence : clients) {
+            synchronized (presence) {
+                oldestRevision = Math.min(oldestRevision, presence.revision);
+            }
+        }
+        if (oldestRevision >= headRevision) {
+            return;
+        }
+        List<TextOperation> operations = otService.getOperations(first.sessionId, first.documentId, oldestRevision);
+        for (ClientPresence presence : clients) {
+            synchronized (presence) {
+                int from = presence.revision - oldestRevision;
+                if (from < 0 || from >= operations.size()) {
+                    continue;
+                }
+                for (TextOperation operation : operations.subList(from, operations.size())) {
+                    Object cursor = transformPositions(presence.cursorPosition, operation);
+                    Object selection = transformPositions(presence.selection, operation);
+                    if (!Objects.equals(cursor, presence.cursorPosition) || !Objects.equals(selection, presence.selection)) {
+                        presence.dirty = true;
+                    }
+                    presence.cursorPosition = cursor;
+                    presence.selection = selection;
+                }
+                presence.revision = oldestRevision + operations.size();
+            }
+        }
+    }
+
+    /**
+     * Moves the offsets of a cursor / selection through the op, see the payload contract above.
+     */
+    static Object transformPositions(Object value, TextOperation operation) {
+        if (!(value instanceof Map<?, ?> map)) {
+            return value;
+        }
+        Map<Object, Object> transformed = new LinkedHashMap<>();
+        map.forEach((k, v) -> {
+            if (OFFSET_KEYS.contains(k) && v instanceof Number number) {
+                transformed.put(k, OTUtils.transformIndex(number.intValue(), operation));
+            } else if (RANGES_KEY.equals(k) && v instanceof List<?> ranges) {
+                List<Object> transformedRanges = new ArrayList<>(ranges.size());
+                for (Object range : ranges) {
+                    transformedRanges.add(transformPositions(range, operation));
+                }
+                transformed.put(k, transformedRanges);
+            } else {
+                transformed.put(k, v);
+            }
+        });
+        return transformed;
+    }
+
+    private String presenceKey(String sessionId, String documentId) {
+        return sessionId + ":" + documentId;
+    }
+
+    private String presenceDestination(String sessionId, String documentId) {
+        return "/topic/presence/" + sessionId + "/" + documentId;
+    }
+
+    private static class ClientPresence {
+        private final String sessionId;
+        private final String documentId;
+        private final String clientId;
+        private Object cursorPosition;
+        private Object selection;
+        private int revision;
+        private boolean dirty;
+        private long lastSentNanos;
+
+        ClientPresence(String sessionId, String documentId, String clientId) {
+            this.sessionId = sessionId;
+            this.documentId = documentId;
+            this.clientId = clientId;
+            this.lastSentNanos = System.nanoTime() - TimeUnit.HOURS.toNanos(1);
+        }
+
+        Map<String, Object> toMessage() {
+            Map<String, Object> message = new HashMap<>();
+            message.put("clientId", clientId);
+            message.put("documentId", documentId);
+            message.put("sessionId", sessionId);
+            message.put("revision", revision);
+            if (cursorPosition != null) {
+                message.put("cursorPosition", cursorPosition);
+            }
+            if (selection != null) {
+                message.put("selection", selection);
+            }
+            return message;
+        }
+    }
+}
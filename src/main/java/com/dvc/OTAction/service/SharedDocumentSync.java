@@ -0,0 +1,33 @@
+package com.dvc.OTAction.service;
+
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.logging.Logger;
+
+/**
+ * With a shared store (ot.store=redis), periodically pulls in what other nodes appended to the documents
+ * resident here and broadcasts it, so the clients of this node see edits made through the others. Does
+ * nothing for the other stores.
+ */
+@Service
+public class SharedDocumentSync {
+
+    private static final Logger logger = Logger.getLogger(SharedDocumentSync.class.getName());
+
+    private final OtService otService;
+    private final OperationBroadcaster broadcaster;
+
+    public SharedDocumentSync(OtService otService, OperationBroadcaster broadcaster) {
+        this.otService = otService;
+        this.broadcaster = broadcaster;
+    }
+
+    @Scheduled(fixedDelayString = "${ot.store.sync-interval-ms:100}")
+    public void sync() {
+        int pulled = otService.pullRemoteOperations(broadcaster::broadcastPulled);
+        if (pulled > 0) {
+            logger.fine(String.format("Pulled %d ops from other nodes", pulled));
+        }
+    }
+}
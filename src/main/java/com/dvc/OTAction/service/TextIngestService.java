@@ -0,0 +1,70 @@
+package com.dvc.OTAction.service;
+
+import com.dvc.OTAction.dto.AppliedOperation;
+import com.dvc.OTAction.dto.IngestResult;
+import com.dvc.OTAction.dto.VersionedContent;
+import com.dvc.OTAction.dto.VersionedText;
+import com.dvc.OTAction.utils.TextDiff;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Turns "here is the whole new text" from external tools (formatters, importers, sync bots) into a minimal op.
+ *
+ * The new text is diffed against the document at the revision the tool started from, and the resulting op
+ * goes through OtService.receiveOperation like any client op, so it is transformed against whatever was
+ * edited in the meantime instead of overwriting it. The diff runs before the OtService lock is taken.
+ */
+@Service
+public class TextIngestService {
+
+    private static final Logger logger = Logger.getLogger(TextIngestService.class.getName());
+
+    private final OtService otService;
+    private final OperationBroadcaster broadcaster;
+    private final int maxLength;
+    private final int maxEdits;
+    private final long timeoutNanos;
+
+    public TextIngestService(OtService otService, OperationBroadcaster broadcaster,
+                             @Value("${ot.diff.max-length:33554432}") int maxLength,
+                             @Value("${ot.diff.max-edits:262144}") int maxEdits,
+                             @Value("${ot.diff.timeout-ms:2000}") long timeoutMillis) {
+        this.otService = otService;
+        this.broadcaster = broadcaster;
+        this.maxLength = maxLength;
+        this.maxEdits = maxEdits;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    public IngestResult ingest(String sessionId, String documentId, int baseRevision, String newText, String clientId) {
+        if (newText == null || newText.length() > maxLength) {
+            throw new IllegalArgumentException(String.format(
+                    "[Session: %s, Doc: %s] Ingested text must be present and at most %d characters.",
+                    sessionId, documentId, maxLength));
+        }
+        VersionedContent base = otService.getContentAt(sessionId, documentId, baseRevision);
+
+        long start = System.nanoTime();
+        TextDiff diff = TextDiff.compute(base.getContent(), newText, maxEdits, timeoutNanos);
+        long diffMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        logger.info(String.format("[Session: %s, Doc: %s] Diffed %d -> %d characters against revision %d in %d ms: +%d -%d%s",
+                sessionId, documentId, base.getContent().length(), newText.length(), baseRevision, diffMillis,
+                diff.getInserted(), diff.getDeleted(), diff.isApproximate() ? " (approximate)" : ""));
+
+        if (diff.isNoop()) {
+            // nothing to do, and no empty op in the history
+            VersionedText head = otService.getText(sessionId, documentId);
+            return new IngestResult(head.getRevision(), head.getText().checksum(), false, 0, 0, false, diffMillis);
+        }
+        AppliedOperation applied = otService.receiveOperation(sessionId, documentId, baseRevision, diff.getOperation(), clientId, false);
+        // the HTTP response is the ingesting tool's ACK, and it has no websocket session to spare from the echo
+        broadcaster.broadcastPulled(sessionId, documentId, applied.getPulledOperations());
+        broadcaster.broadcast(sessionId, documentId, clientId, applied, null);
+        return new IngestResult(applied.getRevision(), applied.getChecksum(), true, diff.getInserted(), diff.getDeleted(),
+                diff.isApproximate(), diffMillis);
+    }
+}
@@ -0,0 +1,157 @@
+package com.dvc.OTAction.service;
+
+import com.dvc.OTAction.store.DocumentStore;
+import com.dvc.OTAction.store.DocumentStore.StoredDocument;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Recovery phase after boot: loads the snapshots and replays the op logs of every stored document in parallel,
+ * most recently written first, until ot.eviction.max-resident-bytes is reached.
+ *
+ * It starts once the application is ready, so connections are accepted from the first moment. A document that
+ * is requested before its turn is simply loaded on demand by OtService, and the warm start skips it later.
+ * Progress and boot-to-ready times are available on /admin/startup.
+ */
+@Service
+public class WarmStartService {
+
+    public enum State { NOT_STARTED, RUNNING, DONE, DISABLED }
+
+    private static final Logger logger = Logger.getLogger(WarmStartService.class.getName());
+
+    private final OtService otService;
+    private final DocumentStore documentStore;
+    private final boolean enabled;
+    private final int threads;
+
+    private volatile State state = State.NOT_STARTED;
+    private volatile ExecutorService executor;
+    private final AtomicBoolean full = new AtomicBoolean();
+    private final AtomicInteger loaded = new AtomicInteger();
+    private final AtomicInteger skipped = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger done = new AtomicInteger();
+    private volatile int total;
+    private volatile long bootToAcceptingMillis = -1;
+    private volatile long bootToWarmMillis = -1;
+    private volatile long warmStartMillis = -1;
+
+    public WarmStartService(OtService otService, DocumentStore documentStore,
+                            @Value("${ot.warmstart.enabled:true}") boolean enabled,
+                            @Value("${ot.warmstart.threads:0}") int threads) {
+        this.otService = otService;
+        this.documentStore = documentStore;
+        this.enabled = enabled;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+        bootToAcceptingMillis = System.currentTimeMillis() - jvmStart;
+        if (!enabled) {
+            state = State.DISABLED;
+            logger.info(String.format("Accepting connections %d ms after boot, warm start disabled", bootToAcceptingMillis));
+            return;
+        }
+        List<StoredDocument> documents = documentStore.listDocuments();
+        total = documents.size();
+        state = State.RUNNING;
+        logger.info(String.format("Accepting connections %d ms after boot, warming %d stored documents on %d threads",
+                bootToAcceptingMillis, total, threads));
+        if (documents.isEmpty()) {
+            finish(System.nanoTime(), jvmStart);
+            return;
+        }
+
+        long start = System.nanoTime();
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "ot-warmstart-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1); // requests that load documents on demand come first
+            return t;
+        });
+        int progressStep = Math.max(1, total / 10);
+        for (StoredDocument document : documents) {
+            executor.execute(() -> {
+                try {
+                    if (full.get()) {
+                        skipped.incrementAndGet();
+                        return;
+                    }
+                    switch (otService.preload(document.sessionId(), document.documentId())) {
+                        case LOADED -> loaded.incrementAndGet();
+                        case ALREADY_LOADED -> skipped.incrementAndGet();
+                        case NO_ROOM -> {
+                            skipped.incrementAndGet();
+                            if (full.compareAndSet(false, true)) {
+                                logger.info("Resident memory budget reached, the remaining documents load on demand");
+                            }
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    failed.incrementAndGet();
+                    logger.log(Level.WARNING, String.format("[Session: %s, Doc: %s] Warm start failed: %s",
+                            document.sessionId(), document.documentId(), e.getMessage()), e);
+                } finally {
+                    int finished = done.incrementAndGet();
+                    if (finished % progressStep == 0 && finished < total) {
+                        logger.info(String.format("Warm start: %d/%d documents (%d loaded, %d skipped, %d failed)",
+                                finished, total, loaded.get(), skipped.get(), failed.get()));
+                    }
+                    if (finished == total) {
+                        finish(start, jvmStart);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+    }
+
+    private void finish(long start, long jvmStart) {
+        warmStartMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        bootToWarmMillis = System.currentTimeMillis() - jvmStart;
+        state = State.DONE;
+        logger.info(String.format("Warm start done in %d ms (%d ms after boot): %d loaded, %d skipped, %d failed",
+                warmStartMillis, bootToWarmMillis, loaded.get(), skipped.get(), failed.get()));
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> mp = new HashMap<>();
+        mp.put("state", state.name());
+        mp.put("documents", total);
+        mp.put("processed", done.get());
+        mp.put("loaded", loaded.get());
+        mp.put("skipped", skipped.get());
+        mp.put("failed", failed.get());
+        mp.put("bootToAcceptingMillis", bootToAcceptingMillis);
+        mp.put("bootToWarmMillis", bootToWarmMillis);
+        mp.put("warmStartMillis", warmStartMillis);
+        return mp;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        ExecutorService running = executor;
+        if (running != null) {
+            running.shutdownNow();
+        }
+    }
+}
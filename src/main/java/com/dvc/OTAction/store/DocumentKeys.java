@@ -0,0 +1,44 @@
+package com.dvc.OTAction.store;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * File names and Redis keys for a document: the Base64url of the sessionId and of the documentId, joined by '.'.
+ * Ids come from clients, so they are never used as a path or key directly, and they may contain any character,
+ * ':' included. '.' is not in the Base64url alphabet, so the two parts always split back exactly.
+ */
+final class DocumentKeys {
+
+    static final char SEPARATOR = '.';
+
+    private DocumentKeys() {
+    }
+
+    static String encode(String sessionId, String documentId) {
+        return encodePart(sessionId) + SEPARATOR + encodePart(documentId);
+    }
+
+    /**
+     * The ids encoded in key, or null if key is not one of ours.
+     */
+    static String[] decode(String key) {
+        int separator = key.indexOf(SEPARATOR);
+        if (separator < 0 || key.indexOf(SEPARATOR, separator + 1) >= 0) {
+            return null;
+        }
+        try {
+            return new String[] { decodePart(key.substring(0, separator)), decodePart(key.substring(separator + 1)) };
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String encodePart(String id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodePart(String part) {
+        return new String(Base64.getUrlDecoder().decode(part), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,68 @@
+package com.dvc.OTAction.store;
+
+import java.util.List;
+
+/**
+ * Everything needed to bring an evicted document back: its content, the revision that content
+ * is at, and the serialized op history (one JSON array per revision).
+ */
+public class DocumentSnapshot {
+
+    private String sessionId;
+    private String documentId;
+    private int revision;
+    private String content;
+    private List<String> history;
+
+    // Default constructor for deserialization
+    public DocumentSnapshot() {
+    }
+
+    public DocumentSnapshot(String sessionId, String documentId, int revision, String content, List<String> history) {
+        this.sessionId = sessionId;
+        this.documentId = documentId;
+        this.revision = revision;
+        this.content = content;
+        this.history = history;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    public void setDocumentId(String documentId) {
+        this.documentId = documentId;
+    }
+
+    public int getRevision() {
+        return revision;
+    }
+
+    public void setRevision(int revision) {
+        this.revision = revision;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+
+    public List<String> getHistory() {
+        return history;
+    }
+
+    public void setHistory(List<String> history) {
+        this.history = history;
+    }
+}
@@ -0,0 +1,223 @@
+package com.dvc.OTAction.store;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+/**
+ * Local snapshot files for evicted documents, one JSON file per document under ot.snapshot.dir.
+ * Writes go to a temp file first and are moved into place, so a crash mid-write never
+ * leaves a half written snapshot behind.
+ *
+ * Next to each snapshot there is an append-only op log ("revision TAB op json" per line) with
+ * everything that was applied after the snapshot. Saving a new snapshot drops the log lines it covers; ops
+ * appended meanwhile (OtService writes snapshots outside its lock) stay. Saves and appends of one document
+ * are serialized on one of LOCK_STRIPES locks.
+ *
+ * Files are named after {@link DocumentKeys}.
+ */
+@Component
+@ConditionalOnProperty(name = "ot.store", havingValue = "file", matchIfMissing = true)
+public class DocumentSnapshotStore implements DocumentStore {
+
+    private static final Logger logger = Logger.getLogger(DocumentSnapshotStore.class.getName());
+    private static final int LOCK_STRIPES = 64;
+
+    private final ObjectMapper objectMapper;
+    private final Path directory;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    public DocumentSnapshotStore(ObjectMapper objectMapper, @Value("${ot.snapshot.dir:data/snapshots}") String directory) {
+        this.objectMapper = objectMapper;
+        this.directory = Paths.get(directory);
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @Override
+    public void save(DocumentSnapshot snapshot) {
+        Path target = snapshotPath(snapshot.getSessionId(), snapshot.getDocumentId());
+        synchronized (lock(snapshot.getSessionId(), snapshot.getDocumentId())) {
+            try {
+                Files.createDirectories(directory);
+                Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+                objectMapper.writeValue(tmp.toFile(), snapshot);
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                truncateLog(snapshot.getSessionId(), snapshot.getDocumentId(), snapshot.getRevision());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write snapshot " + target, e);
+            }
+        }
+    }
+
+    /**
+     * Keeps only the log lines after revision, or deletes the log if there are none.
+     */
+    private void truncateLog(String sessionId, String documentId, int revision) throws IOException {
+        Path log = logPath(sessionId, documentId);
+        if (!Files.exists(log)) {
+            return;
+        }
+        StringBuilder kept = new StringBuilder();
+        for (String line : Files.readAllLines(log, StandardCharsets.UTF_8)) {
+            int tab = line.indexOf('\t');
+            try {
+                if (tab > 0 && Integer.parseInt(line.substring(0, tab)) > revision) {
+                    kept.append(line).append('\n');
+                }
+            } catch (NumberFormatException e) {
+                // torn line, readOperations would stop there anyway
+            }
+        }
+        if (kept.length() == 0) {
+            Files.delete(log);
+            return;
+        }
+        Path tmp = log.resolveSibling(log.getFileName() + ".tmp");
+        Files.writeString(tmp, kept, StandardCharsets.UTF_8);
+        Files.move(tmp, log, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @Override
+    public void appendOperation(String sessionId, String documentId, int revision, String operationJson) {
+        Path log = logPath(sessionId, documentId);
+        synchronized (lock(sessionId, documentId)) {
+            try {
+                Files.createDirectories(directory);
+                try (FileChannel channel = FileChannel.open(log, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                    long size = channel.size();
+                    try {
+                        channel.position(size);
+                        ByteBuffer line = ByteBuffer.wrap((revision + "\t" + operationJson + "\n").getBytes(StandardCharsets.UTF_8));
+                        while (line.hasRemaining()) {
+                            channel.write(line);
+                        }
+                    } catch (IOException e) {
+                        // cut off what made it, so a retry does not append to a torn line
+                        channel.truncate(size);
+                        throw e;
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to append to op log " + log, e);
+            }
+        }
+    }
+
+    /**
+     * A torn last line (crash mid-append) is ignored.
+     */
+    @Override
+    public List<String> readOperations(String sessionId, String documentId, int afterRevision) {
+        Path log = logPath(sessionId, documentId);
+        List<String> operations = new ArrayList<>();
+        if (!Files.exists(log)) {
+            return operations;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(log, StandardCharsets.UTF_8)) {
+            String line;
+            int expected = afterRevision + 1;
+            while ((line = reader.readLine()) != null) {
+                int tab = line.indexOf('\t');
+                if (tab < 0) {
+                    break;
+                }
+                int revision = Integer.parseInt(line.substring(0, tab));
+                if (revision < expected) {
+                    continue; // covered by the snapshot, or a retried append that had made it after all
+                }
+                if (revision != expected) {
+                    logger.warning("Gap in op log " + log + ": expected revision " + expected + " but found " + revision);
+                    break;
+                }
+                operations.add(line.substring(tab + 1));
+                expected++;
+            }
+        } catch (IOException | NumberFormatException e) {
+            logger.warning("Failed to read op log " + log + ": " + e.getMessage());
+        }
+        return operations;
+    }
+
+    @Override
+    public Optional<DocumentSnapshot> load(String sessionId, String documentId) {
+        Path path = snapshotPath(sessionId, documentId);
+        if (!Files.exists(path)) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(objectMapper.readValue(path.toFile(), DocumentSnapshot.class));
+        } catch (IOException e) {
+            logger.warning("Failed to read snapshot " + path + ": " + e.getMessage());
+            throw new UncheckedIOException("Failed to read snapshot " + path, e);
+        }
+    }
+
+    @Override
+    public List<StoredDocument> listDocuments() {
+        Map<String, StoredDocument> documents = new HashMap<>();
+        if (!Files.isDirectory(directory)) {
+            return new ArrayList<>();
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.{json,log}")) {
+            for (Path file : files) {
+                String encoded = baseName(file);
+                String[] ids = DocumentKeys.decode(encoded);
+                if (ids == null) {
+                    continue; // not one of ours
+                }
+                long lastModified = Files.getLastModifiedTime(file).toMillis();
+                documents.merge(encoded, new StoredDocument(ids[0], ids[1], lastModified),
+                        (a, b) -> a.lastModifiedMillis() >= b.lastModifiedMillis() ? a : b);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list " + directory, e);
+        }
+        List<StoredDocument> sorted = new ArrayList<>(documents.values());
+        sorted.sort(Comparator.comparingLong(StoredDocument::lastModifiedMillis).reversed());
+        return sorted;
+    }
+
+    private Object lock(String sessionId, String documentId) {
+        return locks[Math.floorMod(fileName(sessionId, documentId).hashCode(), LOCK_STRIPES)];
+    }
+
+    private Path snapshotPath(String sessionId, String documentId) {
+        return directory.resolve(fileName(sessionId, documentId) + ".json");
+    }
+
+    private Path logPath(String sessionId, String documentId) {
+        return directory.resolve(fileName(sessionId, documentId) + ".log");
+    }
+
+    private String fileName(String sessionId, String documentId) {
+        return DocumentKeys.encode(sessionId, documentId);
+    }
+
+    private static String baseName(Path file) {
+        String name = file.getFileName().toString();
+        return name.substring(0, name.lastIndexOf('.'));
+    }
+}
@@ -0,0 +1,46 @@
+package com.dvc.OTAction.store;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Durable home of documents that are not (or no longer) in OtService's memory: a snapshot of the content at
+ * some revision plus the ops after it. Picked with ot.store: "file" (default, DocumentSnapshotStore),
+ * "redis" (RedisDocumentStore) or "memory" (InMemoryDocumentStore, nothing survives a restart).
+ */
+public interface DocumentStore {
+
+    /**
+     * Appends the op that took the document to {@code revision}. Calls for one document arrive in revision order.
+     * A failed append may be retried with the same arguments.
+     *
+     * @throws RevisionConflictException if the store knows the document is not at revision - 1 (another writer got there first).
+     * @throws java.io.UncheckedIOException if the store could not be reached; the op may or may not have been appended.
+     */
+    void appendOperation(String sessionId, String documentId, int revision, String operationJson);
+
+    /**
+     * True if other app nodes write the same documents. OtService then appends every op before ACKing it and
+     * catches up with the other nodes' ops on a conflict, instead of appending in the background.
+     */
+    default boolean isShared() {
+        return false;
+    }
+
+    /**
+     * Returns the stored ops with a revision greater than afterRevision, in order.
+     */
+    List<String> readOperations(String sessionId, String documentId, int afterRevision);
+
+    void save(DocumentSnapshot snapshot);
+
+    Optional<DocumentSnapshot> load(String sessionId, String documentId);
+
+    /**
+     * Every stored document, most recently written first.
+     */
+    List<StoredDocument> listDocuments();
+
+    record StoredDocument(String sessionId, String documentId, long lastModifiedMillis) {
+    }
+}
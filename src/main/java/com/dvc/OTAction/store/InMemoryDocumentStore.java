@@ -0,0 +1,112 @@
+package com.dvc.OTAction.store;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps stored documents on the heap, with the same compare-and-append rule as RedisDocumentStore.
+ * For tests, single node demos and as the baseline of DocumentStoreBenchmark; nothing survives a restart.
+ */
+@Component
+@ConditionalOnProperty(name = "ot.store", havingValue = "memory")
+public class InMemoryDocumentStore implements DocumentStore {
+
+    private final Map<String, StoredEntry> entries = new ConcurrentHashMap<>();
+
+    @Override
+    public void appendOperation(String sessionId, String documentId, int revision, String operationJson) {
+        StoredEntry entry = entries.computeIfAbsent(key(sessionId, documentId), k -> new StoredEntry(sessionId, documentId));
+        synchronized (entry) {
+            if (entry.history.size() >= revision && operationJson.equals(entry.history.get(revision - 1))) {
+                return; // a retry, see RedisDocumentStore.APPEND_SCRIPT
+            }
+            if (entry.history.size() != revision - 1) {
+                throw new RevisionConflictException(String.format(
+                        "[Session: %s, Doc: %s] Revision %d rejected, the stored history is already at revision %d",
+                        sessionId, documentId, revision, entry.history.size()));
+            }
+            entry.history.add(operationJson);
+            entry.lastModifiedMillis = System.currentTimeMillis();
+        }
+    }
+
+    @Override
+    public List<String> readOperations(String sessionId, String documentId, int afterRevision) {
+        StoredEntry entry = entries.get(key(sessionId, documentId));
+        if (entry == null) {
+            return new ArrayList<>();
+        }
+        synchronized (entry) {
+            return new ArrayList<>(entry.history.subList(Math.min(afterRevision, entry.history.size()), entry.history.size()));
+        }
+    }
+
+    @Override
+    public void save(DocumentSnapshot snapshot) {
+        StoredEntry entry = entries.computeIfAbsent(key(snapshot.getSessionId(), snapshot.getDocumentId()),
+                k -> new StoredEntry(snapshot.getSessionId(), snapshot.getDocumentId()));
+        List<String> history = snapshot.getHistory() != null ? snapshot.getHistory() : List.of();
+        synchronized (entry) {
+            if (snapshot.getRevision() >= entry.snapshotRevision) {
+                entry.snapshotRevision = snapshot.getRevision();
+                entry.content = snapshot.getContent();
+            }
+            if (entry.history.size() < history.size()) {
+                entry.history.addAll(history.subList(entry.history.size(), history.size()));
+            }
+            entry.lastModifiedMillis = System.currentTimeMillis();
+        }
+    }
+
+    @Override
+    public Optional<DocumentSnapshot> load(String sessionId, String documentId) {
+        StoredEntry entry = entries.get(key(sessionId, documentId));
+        if (entry == null) {
+            return Optional.empty();
+        }
+        synchronized (entry) {
+            if (entry.content == null) {
+                return Optional.empty();
+            }
+            return Optional.of(new DocumentSnapshot(sessionId, documentId, entry.snapshotRevision, entry.content,
+                    new ArrayList<>(entry.history.subList(0, Math.min(entry.snapshotRevision, entry.history.size())))));
+        }
+    }
+
+    @Override
+    public List<StoredDocument> listDocuments() {
+        List<StoredDocument> documents = new ArrayList<>();
+        for (StoredEntry entry : entries.values()) {
+            synchronized (entry) {
+                documents.add(new StoredDocument(entry.sessionId, entry.documentId, entry.lastModifiedMillis));
+            }
+        }
+        documents.sort(Comparator.comparingLong(StoredDocument::lastModifiedMillis).reversed());
+        return documents;
+    }
+
+    private String key(String sessionId, String documentId) {
+        return DocumentKeys.encode(sessionId, documentId);
+    }
+
+    private static class StoredEntry {
+        private final String sessionId;
+        private final String documentId;
+        private final List<String> history = new ArrayList<>();
+        private String content;
+        private int snapshotRevision = -1;
+        private long lastModifiedMillis;
+
+        StoredEntry(String sessionId, String documentId) {
+            this.sessionId = sessionId;
+            this.documentId = documentId;
+        }
+    }
+}
@@ -0,0 +1,511 @@
+package com.dvc.OTAction.store;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * Documents in Redis (or anything speaking its protocol), so several app nodes can share them.
+ *
+ * Per document, keyed by its {@link DocumentKeys} id (in braces, so both keys share a cluster slot):
+ *  - ot:doc:{id}:history  list with one op JSON per revision, its length is the document's revision
+ *  - ot:doc:{id}:snapshot hash with the content at some revision (fields revision, content)
+ * plus the sorted set ot:documents, scored by last write, for listDocuments().
+ *
+ * Appends go through {@link #APPEND_SCRIPT}, which only pushes when the list is exactly at the expected
+ * revision. That compare-and-append runs atomically in Redis, so two nodes writing the same revision cannot
+ * both win, no JVM lock involved; the loser gets a RevisionConflictException. The store is shared (isShared),
+ * so OtService appends before it ACKs and, on a conflict, pulls the winner's ops in and transforms against them.
+ *
+ * Appends are pipelined: all threads share one connection, and whoever gets it writes every append queued
+ * up to that point (at most ot.redis.max-batch) in one round trip while the others park. Under load that is
+ * one round trip per batch instead of per op.
+ */
+@Component
+@ConditionalOnProperty(name = "ot.store", havingValue = "redis")
+public class RedisDocumentStore implements DocumentStore {
+
+    /**
+     * KEYS[1] = history list, ARGV[1] = expected length, ARGV[2..] = ops to push.
+     * Returns {1, new length}, or {0, current length} without pushing anything. If exactly these ops already
+     * follow the expected length (a retry of a push whose reply was lost) that counts as pushed.
+     */
+    public static final String APPEND_SCRIPT = """
+            local length = redis.call('LLEN', KEYS[1])
+            local expected = tonumber(ARGV[1])
+            if length ~= expected then
+              if length < expected + #ARGV - 1 then
+                return {0, length}
+              end
+              local pushed = redis.call('LRANGE', KEYS[1], expected, expected + #ARGV - 2)
+              for i = 2, #ARGV do
+                if pushed[i - 1] ~= ARGV[i] then
+                  return {0, length}
+                end
+              end
+              return {1, expected + #ARGV - 1}
+            end
+            for i = 2, #ARGV do
+              redis.call('RPUSH', KEYS[1], ARGV[i])
+            end
+            return {1, length + #ARGV - 1}
+            """;
+
+    /**
+     * KEYS[1] = snapshot hash, KEYS[2] = history list, ARGV[1] = revision, ARGV[2] = content,
+     * ARGV[3] = the op that took the document to that revision ("" at revision 0).
+     * Returns -1 without writing if the history does not reach the revision or has another op there (load()
+     * could never use such a snapshot), 0 if a snapshot at a higher revision (written by another node) is
+     * already there, else writes it and returns 1.
+     */
+    public static final String SNAPSHOT_SCRIPT = """
+            local revision = tonumber(ARGV[1])
+            if redis.call('LLEN', KEYS[2]) < revision
+                or (revision > 0 and redis.call('LINDEX', KEYS[2], revision - 1) ~= ARGV[3]) then
+              return -1
+            end
+            local current = tonumber(redis.call('HGET', KEYS[1], 'revision') or '-1')
+            if current > revision then
+              return 0
+            end
+            redis.call('HSET', KEYS[1], 'revision', ARGV[1], 'content', ARGV[2])
+            return 1
+            """;
+
+    private static final Logger logger = Logger.getLogger(RedisDocumentStore.class.getName());
+
+    // backstop for a missed wake-up while waiting for another thread's round trip
+    private static final long HANDOVER_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    // ops per RPUSH when save() has to fill in history Redis does not have yet
+    private static final int HISTORY_FILL_BATCH = 1000;
+
+    private final String host;
+    private final int port;
+    private final int timeoutMillis;
+    private final String keyPrefix;
+    private final int maxBatch;
+    private final String appendSha = sha1(APPEND_SCRIPT);
+    private final String snapshotSha = sha1(SNAPSHOT_SCRIPT);
+
+    // guards connection; appends queue up here and are written by whoever holds it
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Queue<PendingAppend> queuedAppends = new ConcurrentLinkedQueue<>();
+    private RespConnection connection;
+
+    private final AtomicLong appends = new AtomicLong();
+    private final AtomicLong appendRoundTrips = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+
+    public RedisDocumentStore(@Value("${ot.redis.host:localhost}") String host,
+                              @Value("${ot.redis.port:6379}") int port,
+                              @Value("${ot.redis.timeout-ms:2000}") int timeoutMillis,
+                              @Value("${ot.redis.key-prefix:ot:}") String keyPrefix,
+                              @Value("${ot.redis.max-batch:256}") int maxBatch) {
+        this.host = host;
+        this.port = port;
+        this.timeoutMillis = timeoutMillis;
+        this.keyPrefix = keyPrefix;
+        this.maxBatch = Math.max(1, maxBatch);
+    }
+
+    @Override
+    public void appendOperation(String sessionId, String documentId, int revision, String operationJson) {
+        PendingAppend append = new PendingAppend(sessionId, documentId, revision, operationJson);
+        queuedAppends.add(append);
+        while (!append.done) {
+            if (lock.tryLock()) {
+                try {
+                    while (!append.done) {
+                        writeQueuedAppends();
+                    }
+                } finally {
+                    unlock();
+                }
+            } else {
+                // whoever holds the connection writes ours with their batch, or hands the connection over to us
+                LockSupport.parkNanos(this, HANDOVER_TIMEOUT_NANOS);
+            }
+        }
+        if (append.failure != null) {
+            throw append.failure;
+        }
+    }
+
+    /**
+     * Writes up to maxBatch queued appends in one round trip. Caller holds the lock.
+     */
+    private void writeQueuedAppends() {
+        List<PendingAppend> batch = new ArrayList<>();
+        PendingAppend next;
+        while (batch.size() < maxBatch && (next = queuedAppends.poll()) != null) {
+            batch.add(next);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            RespConnection c = connection();
+            List<Object> replies = sendAppends(c, batch);
+            if (replies.stream().anyMatch(RedisDocumentStore::isNoScript)) {
+                // the script cache was flushed since we connected; nothing of this batch was applied
+                loadScripts(c);
+                replies = sendAppends(c, batch);
+            }
+            appendRoundTrips.incrementAndGet();
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).complete(replies.get(i));
+            }
+        } catch (IOException | RuntimeException e) {
+            disconnect();
+            RuntimeException failure = e instanceof IOException io
+                    ? new UncheckedIOException("Failed to append to Redis at " + host + ":" + port, io)
+                    : (RuntimeException) e;
+            for (PendingAppend append : batch) {
+                append.fail(failure);
+            }
+        }
+    }
+
+    private List<Object> sendAppends(RespConnection c, List<PendingAppend> batch) throws IOException {
+        Set<String> touched = new LinkedHashSet<>();
+        for (PendingAppend append : batch) {
+            String id = encodedId(append.sessionId, append.documentId);
+            c.send(List.of("EVALSHA", appendSha, "1", historyKey(id), String.valueOf(append.revision - 1), append.operationJson));
+            touched.add(id);
+        }
+        c.send(indexUpdate(touched));
+        c.flush();
+        List<Object> replies = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            replies.add(c.read());
+        }
+        c.read(); // ZADD count
+        return replies;
+    }
+
+    /**
+     * Op JSONs after the given revision, straight from the history list.
+     */
+    @Override
+    public List<String> readOperations(String sessionId, String documentId, int afterRevision) {
+        String id = encodedId(sessionId, documentId);
+        return withConnection(c -> strings(c.call(List.of("LRANGE", historyKey(id), String.valueOf(afterRevision), "-1"))));
+    }
+
+    @Override
+    public boolean isShared() {
+        return true;
+    }
+
+    /**
+     * Pushes any part of the snapshot's history that Redis does not have yet (a document that was created while
+     * another store was configured, for example), then writes the snapshot. In that order, so a snapshot never
+     * gets ahead of the history, even if the fill stops halfway or the process dies.
+     */
+    @Override
+    public void save(DocumentSnapshot snapshot) {
+        String id = encodedId(snapshot.getSessionId(), snapshot.getDocumentId());
+        List<String> history = snapshot.getHistory() != null ? snapshot.getHistory() : List.of();
+        withConnection(c -> {
+            Object llen = c.call(List.of("LLEN", historyKey(id)));
+            throwIfError(llen);
+            long length = (Long) llen;
+            if (length > 0 && length < history.size()) {
+                // the list only ever grows, so if its last op is ours the fill below continues our history
+                Object last = c.call(List.of("LINDEX", historyKey(id), String.valueOf(length - 1)));
+                throwIfError(last);
+                if (!history.get((int) length - 1).equals(last)) {
+                    throw new RevisionConflictException(String.format(
+                            "[Session: %s, Doc: %s] History in Redis differs from the snapshot's at revision %d",
+                            snapshot.getSessionId(), snapshot.getDocumentId(), length));
+                }
+            }
+            while (length < history.size()) {
+                int from = (int) length;
+                List<String> args = new ArrayList<>(List.of("EVALSHA", appendSha, "1", historyKey(id), String.valueOf(from)));
+                args.addAll(history.subList(from, Math.min(history.size(), from + HISTORY_FILL_BATCH)));
+                Object reply = c.call(args);
+                if (isNoScript(reply)) {
+                    loadScripts(c);
+                    continue;
+                }
+                throwIfError(reply);
+                List<?> result = (List<?>) reply;
+                if (Long.valueOf(0).equals(result.get(0))) {
+                    break; // someone else is appending, the snapshot script decides whether ours still fits
+                }
+                length = (Long) result.get(1);
+            }
+            List<Object> replies = sendSnapshot(c, id, snapshot, history);
+            if (isNoScript(replies.get(0))) {
+                loadScripts(c);
+                replies = sendSnapshot(c, id, snapshot, history);
+            }
+            throwIfError(replies.get(0));
+            if (Long.valueOf(-1).equals(replies.get(0))) {
+                throw new RevisionConflictException(String.format(
+                        "[Session: %s, Doc: %s] Snapshot at revision %d does not match the history in Redis",
+                        snapshot.getSessionId(), snapshot.getDocumentId(), snapshot.getRevision()));
+            }
+            if (Long.valueOf(0).equals(replies.get(0))) {
+                logger.fine(String.format("[Session: %s, Doc: %s] Kept the newer snapshot already in Redis",
+                        snapshot.getSessionId(), snapshot.getDocumentId()));
+            }
+            return null;
+        });
+    }
+
+    private List<Object> sendSnapshot(RespConnection c, String id, DocumentSnapshot snapshot, List<String> history) throws IOException {
+        int revision = snapshot.getRevision();
+        String lastOperation = revision > 0 && revision <= history.size() ? history.get(revision - 1) : "";
+        c.send(List.of("EVALSHA", snapshotSha, "2", snapshotKey(id), historyKey(id), String.valueOf(revision),
+                snapshot.getContent() != null ? snapshot.getContent() : "", lastOperation));
+        c.send(indexUpdate(Set.of(id)));
+        c.flush();
+        return List.of(c.read(), c.read());
+    }
+
+    /**
+     * Snapshot content plus the history up to its revision, in one round trip.
+     */
+    @Override
+    public Optional<DocumentSnapshot> load(String sessionId, String documentId) {
+        String id = encodedId(sessionId, documentId);
+        return withConnection(c -> {
+            c.send(List.of("HMGET", snapshotKey(id), "revision", "content"));
+            c.send(List.of("LRANGE", historyKey(id), "0", "-1"));
+            c.flush();
+            Object fields = c.read();
+            Object history = c.read();
+            throwIfError(fields);
+            throwIfError(history);
+            List<?> values = (List<?>) fields;
+            if (values.get(0) == null) {
+                return Optional.empty();
+            }
+            int revision = Integer.parseInt((String) values.get(0));
+            List<String> operations = strings(history);
+            if (operations.size() < revision) {
+                throw new IllegalStateException(String.format("[Session: %s, Doc: %s] Snapshot is at revision %d but the history has only %d ops",
+                        sessionId, documentId, revision, operations.size()));
+            }
+            return Optional.of(new DocumentSnapshot(sessionId, documentId, revision, (String) values.get(1),
+                    new ArrayList<>(operations.subList(0, revision))));
+        });
+    }
+
+    @Override
+    public List<StoredDocument> listDocuments() {
+        List<Object> reply = withConnection(c -> objects(c.call(List.of("ZREVRANGE", indexKey(), "0", "-1", "WITHSCORES"))));
+        List<StoredDocument> documents = new ArrayList<>(reply.size() / 2);
+        for (int i = 0; i + 1 < reply.size(); i += 2) {
+            String[] ids = DocumentKeys.decode((String) reply.get(i));
+            if (ids == null) {
+                continue; // not one of ours
+            }
+            long lastModified = (long) Double.parseDouble((String) reply.get(i + 1));
+            documents.add(new StoredDocument(ids[0], ids[1], lastModified));
+        }
+        return documents;
+    }
+
+    public long getAppendCount() {
+        return appends.get();
+    }
+
+    public long getAppendRoundTripCount() {
+        return appendRoundTrips.get();
+    }
+
+    public long getConflictCount() {
+        return conflicts.get();
+    }
+
+    @PreDestroy
+    public void close() {
+        lock.lock();
+        try {
+            disconnect();
+        } finally {
+            unlock();
+        }
+    }
+
+    private <T> T withConnection(RedisCall<T> call) {
+        lock.lock();
+        try {
+            return call.run(connection());
+        } catch (IOException e) {
+            disconnect();
+            throw new UncheckedIOException("Redis at " + host + ":" + port + " failed", e);
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Releases the connection and wakes the oldest queued append, whose thread then writes the next batch.
+     */
+    private void unlock() {
+        lock.unlock();
+        PendingAppend next = queuedAppends.peek();
+        if (next != null) {
+            LockSupport.unpark(next.thread);
+        }
+    }
+
+    private RespConnection connection() throws IOException {
+        if (connection == null) {
+            RespConnection c = new RespConnection(host, port, timeoutMillis);
+            try {
+                loadScripts(c);
+            } catch (IOException | RuntimeException e) {
+                c.close();
+                throw e;
+            }
+            connection = c;
+            logger.info("Connected to Redis at " + host + ":" + port);
+        }
+        return connection;
+    }
+
+    private void loadScripts(RespConnection c) throws IOException {
+        c.call(List.of("SCRIPT", "LOAD", APPEND_SCRIPT));
+        c.call(List.of("SCRIPT", "LOAD", SNAPSHOT_SCRIPT));
+    }
+
+    private void disconnect() {
+        if (connection != null) {
+            connection.close();
+            connection = null;
+        }
+    }
+
+    private List<String> indexUpdate(Set<String> ids) {
+        List<String> args = new ArrayList<>(2 + 2 * ids.size());
+        args.add("ZADD");
+        args.add(indexKey());
+        String now = String.valueOf(System.currentTimeMillis());
+        for (String id : ids) {
+            args.add(now);
+            args.add(id);
+        }
+        return args;
+    }
+
+    private String historyKey(String id) {
+        return keyPrefix + "doc:{" + id + "}:history";
+    }
+
+    private String snapshotKey(String id) {
+        return keyPrefix + "doc:{" + id + "}:snapshot";
+    }
+
+    private String indexKey() {
+        return keyPrefix + "documents";
+    }
+
+    private static String encodedId(String sessionId, String documentId) {
+        return DocumentKeys.encode(sessionId, documentId);
+    }
+
+    private static boolean isNoScript(Object reply) {
+        return reply instanceof RespConnection.Error error && error.message().startsWith("NOSCRIPT");
+    }
+
+    private static void throwIfError(Object reply) {
+        if (reply instanceof RespConnection.Error error) {
+            throw new IllegalStateException("Redis command failed: " + error.message());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> objects(Object reply) {
+        throwIfError(reply);
+        return reply == null ? List.of() : (List<Object>) reply;
+    }
+
+    private static List<String> strings(Object reply) {
+        List<String> strings = new ArrayList<>();
+        for (Object item : objects(reply)) {
+            strings.add((String) item);
+        }
+        return strings;
+    }
+
+    static String sha1(String script) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private interface RedisCall<T> {
+        T run(RespConnection connection) throws IOException;
+    }
+
+    /**
+     * An append waiting for its round trip. Completed by whichever thread wrote it, which then wakes the owner.
+     */
+    private class PendingAppend {
+        private final String sessionId;
+        private final String documentId;
+        private final int revision;
+        private final String operationJson;
+        private final Thread thread = Thread.currentThread();
+        private volatile boolean done;
+        private RuntimeException failure; // published by the write of done
+
+        PendingAppend(String sessionId, String documentId, int revision, String operationJson) {
+            this.sessionId = sessionId;
+            this.documentId = documentId;
+            this.revision = revision;
+            this.operationJson = operationJson;
+        }
+
+        void complete(Object reply) {
+            if (reply instanceof RespConnection.Error error) {
+                fail(new IllegalStateException("Redis append failed: " + error.message()));
+                return;
+            }
+            List<?> result = (List<?>) reply;
+            if (Long.valueOf(1).equals(result.get(0))) {
+                appends.incrementAndGet();
+            } else {
+                conflicts.incrementAndGet();
+                failure = new RevisionConflictException(String.format(
+                        "[Session: %s, Doc: %s] Revision %d rejected, the shared history is already at revision %d",
+                        sessionId, documentId, revision, result.get(1)));
+            }
+            done = true;
+            LockSupport.unpark(thread);
+        }
+
+        void fail(RuntimeException e) {
+            failure = e;
+            done = true;
+            LockSupport.unpark(thread);
+        }
+    }
+}
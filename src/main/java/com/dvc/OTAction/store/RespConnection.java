@@ -0,0 +1,157 @@
+package com.dvc.OTAction.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One socket speaking the Redis protocol (RESP2). Not thread safe, RedisDocumentStore serializes access.
+ *
+ * Commands are only buffered by {@link #send}; {@link #flush} writes them in one go and {@link #read} takes
+ * the replies in the same order, which is all that pipelining is. Replies are mapped to Java as:
+ * simple string / bulk string -> String (null for a nil bulk), integer -> Long, array -> List&lt;Object&gt;,
+ * error -> {@link Error} (returned, not thrown, so one failing command does not lose the rest of a pipeline).
+ */
+final class RespConnection implements AutoCloseable {
+
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+
+    RespConnection(String host, int port, int timeoutMillis) throws IOException {
+        this.socket = new Socket();
+        socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+        socket.setSoTimeout(timeoutMillis);
+        socket.setTcpNoDelay(true);
+        this.in = new BufferedInputStream(socket.getInputStream(), 64 * 1024);
+        this.out = new BufferedOutputStream(socket.getOutputStream(), 64 * 1024);
+    }
+
+    void send(List<String> args) throws IOException {
+        writeLine('*', args.size());
+        for (String arg : args) {
+            byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+            writeLine('$', bytes.length);
+            out.write(bytes);
+            out.write('\r');
+            out.write('\n');
+        }
+    }
+
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Sends one command and waits for its reply. An error reply is thrown.
+     */
+    Object call(List<String> args) throws IOException {
+        send(args);
+        flush();
+        Object reply = read();
+        if (reply instanceof Error error) {
+            throw new IllegalStateException("Redis " + args.get(0) + " failed: " + error.message());
+        }
+        return reply;
+    }
+
+    Object read() throws IOException {
+        int type = in.read();
+        switch (type) {
+            case '+':
+                return readLine();
+            case '-':
+                return new Error(readLine());
+            case ':':
+                return readNumber();
+            case '$': {
+                int length = (int) readNumber();
+                if (length < 0) {
+                    return null;
+                }
+                byte[] bytes = new byte[length];
+                if (in.readNBytes(bytes, 0, length) < length) {
+                    throw new EOFException("Redis closed the connection mid-reply");
+                }
+                in.skipNBytes(2); // trailing CRLF
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            case '*': {
+                int count = (int) readNumber();
+                if (count < 0) {
+                    return null;
+                }
+                List<Object> items = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    items.add(read());
+                }
+                return items;
+            }
+            case -1:
+                throw new EOFException("Redis closed the connection");
+            default:
+                throw new IOException("Unexpected RESP type '" + (char) type + "'");
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // nothing left to do with a broken socket
+        }
+    }
+
+    private void writeLine(char type, int value) throws IOException {
+        out.write(type);
+        out.write(Integer.toString(value).getBytes(StandardCharsets.US_ASCII));
+        out.write('\r');
+        out.write('\n');
+    }
+
+    /**
+     * Reads the (possibly negative) integer of a ':', '$' or '*' line, without building a String for it.
+     */
+    private long readNumber() throws IOException {
+        long value = 0;
+        boolean negative = false;
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c == '-') {
+                negative = true;
+            } else if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+            } else {
+                throw c < 0 ? new EOFException("Redis closed the connection mid-reply") : new IOException("Malformed RESP number");
+            }
+        }
+        in.read(); // '\n'
+        return negative ? -value : value;
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(16);
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c < 0) {
+                throw new EOFException("Redis closed the connection mid-reply");
+            }
+            line.write(c);
+        }
+        in.read(); // '\n'
+        return line.toString(StandardCharsets.UTF_8);
+    }
+
+    record Error(String message) {
+    }
+}
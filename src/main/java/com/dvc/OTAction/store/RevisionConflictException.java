@@ -0,0 +1,13 @@
+package com.dvc.OTAction.store;
+
+/**
+ * The stored history is not at the revision an append (or snapshot) was written against: another writer got
+ * there first. Retrying the same append cannot help; the writer has to catch up with the stored ops and
+ * transform against them first (see OtService.receiveShared).
+ */
+public class RevisionConflictException extends IllegalStateException {
+
+    public RevisionConflictException(String message) {
+        super(message);
+    }
+}
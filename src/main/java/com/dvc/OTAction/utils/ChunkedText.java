@@ -0,0 +1,365 @@
+package com.dvc.OTAction.utils;
+
+import com.dvc.OTAction.dto.TextOperation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable document text stored as a list of chunks, each carrying its own hash.
+ *
+ * Applying a TextOperation only rebuilds the chunks the op touches and shares every other chunk
+ * with the previous version, so the cost is the size of the op plus the number of chunks, not the
+ * size of the document. Because versions are immutable, readers can hold on to one without a lock.
+ *
+ * Checksum: a polynomial hash over the UTF-16 code units of the whole document,
+ *   hash = (c[0] * B^(n-1) + c[1] * B^(n-2) + ... + c[n-1]) mod (2^61 - 1),  B = 1000003,
+ * printed as 16 hex digits. Hashes of neighbouring chunks combine as h(xy) = h(x) * B^|y| + h(y),
+ * which is what lets us keep chunk hashes and never rescan the whole text. Clients can compute the
+ * same value over their local copy to check they converged.
+ *
+ * Line index: every chunk also knows how many '\n' it contains, so mapping a line number to an offset
+ * (and back) is a binary search over the chunks plus a scan of a single chunk. Like the hash, the
+ * counts of reused chunks carry over and only new chunks are counted.
+ */
+public final class ChunkedText {
+
+    private static final long MOD = (1L << 61) - 1;
+    private static final long BASE = 1_000_003L;
+
+    static final int MIN_CHUNK = 1024;
+    static final int TARGET_CHUNK = 4096;
+    static final int MAX_CHUNK = 8192;
+
+    private static final ChunkedText EMPTY = new ChunkedText(new Chunk[0]);
+
+    private final Chunk[] chunks;
+    // starts[i] is the offset of chunks[i] in the document, starts[chunks.length] is the length
+    private final int[] starts;
+    // newlinesBefore[i] is the number of '\n' in the chunks before chunks[i]
+    private final int[] newlinesBefore;
+    private final long hash;
+
+    private ChunkedText(Chunk[] chunks) {
+        this.chunks = chunks;
+        this.starts = new int[chunks.length + 1];
+        this.newlinesBefore = new int[chunks.length + 1];
+        long h = 0;
+        for (int i = 0; i < chunks.length; i++) {
+            starts[i + 1] = starts[i] + chunks[i].text.length();
+            newlinesBefore[i + 1] = newlinesBefore[i] + chunks[i].newlines;
+            h = add(mul(h, chunks[i].power), chunks[i].hash);
+        }
+        this.hash = h;
+    }
+
+    public static ChunkedText empty() {
+        return EMPTY;
+    }
+
+    public static ChunkedText of(String text) {
+        List<Object> chunks = new ArrayList<>();
+        appendChunks(chunks, text);
+        return new ChunkedText(hashNewChunks(chunks));
+    }
+
+    public int length() {
+        return starts[chunks.length];
+    }
+
+    public long hash() {
+        return hash;
+    }
+
+    public String checksum() {
+        return String.format("%016x", hash);
+    }
+
+    public int chunkCount() {
+        return chunks.length;
+    }
+
+    /**
+     * The chunks in document order, for callers that want to stream the text instead of flattening it.
+     */
+    public List<String> chunks() {
+        List<String> texts = new ArrayList<>(chunks.length);
+        for (Chunk chunk : chunks) {
+            texts.add(chunk.text);
+        }
+        return texts;
+    }
+
+    /**
+     * Number of characters in chunks of this text that other does not share (chunks are compared by identity),
+     * i.e. roughly what keeping this version costs on top of keeping other.
+     */
+    public long unsharedLength(ChunkedText other) {
+        Set<Chunk> shared = new HashSet<>(Arrays.asList(other.chunks));
+        long unshared = 0;
+        for (Chunk chunk : chunks) {
+            if (!shared.contains(chunk)) {
+                unshared += chunk.text.length();
+            }
+        }
+        return unshared;
+    }
+
+    /**
+     * Number of lines, i.e. newlines + 1 (an empty document has one empty line).
+     */
+    public int lineCount() {
+        return newlinesBefore[chunks.length] + 1;
+    }
+
+    /**
+     * Offset of the first character of the given (0 based) line.
+     */
+    public int lineStart(int line) {
+        if (line < 0 || line >= lineCount()) {
+            throw new IndexOutOfBoundsException("Line " + line + " outside document of " + lineCount() + " lines");
+        }
+        if (line == 0) {
+            return 0;
+        }
+        // the chunk holding the line-th newline: last i with newlinesBefore[i] < line
+        int lo = 0, hi = chunks.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (newlinesBefore[mid] < line) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        String text = chunks[lo].text;
+        int remaining = line - newlinesBefore[lo];
+        int pos = -1;
+        while (remaining-- > 0) {
+            pos = text.indexOf('\n', pos + 1);
+        }
+        return starts[lo] + pos + 1;
+    }
+
+    /**
+     * The (0 based) line the given offset is on.
+     */
+    public int lineOf(int offset) {
+        if (offset < 0 || offset > length()) {
+            throw new IndexOutOfBoundsException("Offset " + offset + " outside document of length " + length());
+        }
+        if (chunks.length == 0) {
+            return 0;
+        }
+        int i = chunkIndexOf(offset);
+        String text = chunks[i].text;
+        int line = newlinesBefore[i];
+        for (int pos = text.indexOf('\n'); pos >= 0 && pos < offset - starts[i]; pos = text.indexOf('\n', pos + 1)) {
+            line++;
+        }
+        return line;
+    }
+
+    /**
+     * Same semantics (and errors) as OTUtils.apply, but returns a new ChunkedText that shares untouched chunks.
+     */
+    public ChunkedText apply(TextOperation operation) {
+        // reused chunks as Chunk, new ones as their text until they are hashed at the end
+        List<Object> out = new ArrayList<>(chunks.length + 2);
+        StringBuilder pending = new StringBuilder();
+        int chunkIdx = 0;   // chunk the cursor is in
+        int chunkOff = 0;   // offset of the cursor inside that chunk
+        int docIdx = 0;
+        int length = length();
+
+        for (Object op : operation.getOps()) {
+            if (TextOperation.isRetain(op)) {
+                int retainCount = (Integer) op;
+                if (docIdx + retainCount > length) {
+                    throw new IllegalArgumentException("Retain exceeds document length.");
+                }
+                docIdx += retainCount;
+                while (retainCount > 0) {
+                    Chunk chunk = chunks[chunkIdx];
+                    int available = chunk.text.length() - chunkOff;
+                    if (chunkOff == 0 && retainCount >= available && pending.length() == 0) {
+                        out.add(chunk); // untouched, reuse as is
+                    } else if (chunkOff == 0 && retainCount >= available && pending.length() >= MIN_CHUNK) {
+                        flush(out, pending);
+                        out.add(chunk);
+                    } else {
+                        // partial chunk, or a small pending piece we'd rather merge than leave as a tiny chunk
+                        int take = Math.min(available, retainCount);
+                        pending.append(chunk.text, chunkOff, chunkOff + take);
+                        if (pending.length() >= MAX_CHUNK) {
+                            flush(out, pending);
+                        }
+                        retainCount -= take;
+                        chunkOff += take;
+                        if (chunkOff == chunk.text.length()) {
+                            chunkIdx++;
+                            chunkOff = 0;
+                        }
+                        continue;
+                    }
+                    retainCount -= available;
+                    chunkIdx++;
+                    chunkOff = 0;
+                }
+            } else if (TextOperation.isInsert(op)) {
+                pending.append((String) op);
+                if (pending.length() >= MAX_CHUNK) {
+                    flush(out, pending);
+                }
+            } else if (TextOperation.isDelete(op)) {
+                int deleteCount = -(Integer) op;
+                if (docIdx + deleteCount > length) {
+                    throw new IllegalArgumentException("Delete exceeds document length.");
+                }
+                docIdx += deleteCount;
+                while (deleteCount > 0) {
+                    int available = chunks[chunkIdx].text.length() - chunkOff;
+                    int skip = Math.min(available, deleteCount);
+                    deleteCount -= skip;
+                    chunkOff += skip;
+                    if (chunkOff == chunks[chunkIdx].text.length()) {
+                        chunkIdx++;
+                        chunkOff = 0;
+                    }
+                }
+            } else {
+                throw new IllegalArgumentException("Invalid op type in operation: " + op);
+            }
+        }
+        if (docIdx != length) {
+            throw new IllegalArgumentException("Operation did not consume the entire document.");
+        }
+        flush(out, pending);
+        return new ChunkedText(hashNewChunks(out));
+    }
+
+    /**
+     * Returns text[from, to) without building the whole document.
+     */
+    public String substring(int from, int to) {
+        if (from < 0 || to > length() || from > to) {
+            throw new IndexOutOfBoundsException("Range [" + from + ", " + to + ") outside document of length " + length());
+        }
+        StringBuilder sb = new StringBuilder(to - from);
+        for (int i = chunkIndexOf(from); i < chunks.length && starts[i] < to; i++) {
+            int start = Math.max(from, starts[i]) - starts[i];
+            int end = Math.min(to, starts[i + 1]) - starts[i];
+            sb.append(chunks[i].text, start, end);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(length());
+        for (Chunk chunk : chunks) {
+            sb.append(chunk.text);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Index of the chunk containing the given offset (the last chunk for offset == length()).
+     */
+    int chunkIndexOf(int offset) {
+        int lo = 0, hi = chunks.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (starts[mid] <= offset) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Turns pending into new chunks. A piece shorter than MIN_CHUNK (only the tail of an op ends up here) is
+     * merged with the chunk before it, otherwise typing at the end of a document would add a chunk per keystroke.
+     * Keeps every chunk in [MIN_CHUNK, MAX_CHUNK] unless the document is a single chunk.
+     */
+    private static void flush(List<Object> out, StringBuilder pending) {
+        if (pending.length() == 0) {
+            return;
+        }
+        if (pending.length() < MIN_CHUNK && !out.isEmpty()) {
+            Object previous = out.remove(out.size() - 1);
+            pending.insert(0, previous instanceof Chunk chunk ? chunk.text : (String) previous);
+        }
+        appendChunks(out, pending);
+        pending.setLength(0);
+    }
+
+    private static void appendChunks(List<Object> out, CharSequence text) {
+        int length = text.length();
+        int offset = 0;
+        while (offset < length) {
+            int remaining = length - offset;
+            // never leave a tail shorter than MIN_CHUNK when we can avoid it
+            int size = remaining <= MAX_CHUNK ? remaining : Math.min(TARGET_CHUNK, remaining - MIN_CHUNK);
+            out.add(text.subSequence(offset, offset + size).toString());
+            offset += size;
+        }
+    }
+
+    /**
+     * Turns the texts among pieces into hashed Chunks.
+     */
+    private static Chunk[] hashNewChunks(List<Object> pieces) {
+        Chunk[] result = new Chunk[pieces.size()];
+        for (int i = 0; i < result.length; i++) {
+            Object piece = pieces.get(i);
+            result[i] = piece instanceof Chunk chunk ? chunk : new Chunk((String) piece);
+        }
+        return result;
+    }
+
+    static long mul(long a, long b) {
+        // a, b < 2^61: the 122 bit product is split at bit 61, and 2^61 == 1 (mod 2^61 - 1)
+        long hi = Math.multiplyHigh(a, b);
+        long lo = a * b;
+        long low61 = lo & MOD;
+        long high = (hi << 3) | (lo >>> 61);
+        return add(low61, high);
+    }
+
+    static long add(long a, long b) {
+        long sum = a + b;
+        sum = (sum & MOD) + (sum >>> 61);
+        return sum >= MOD ? sum - MOD : sum;
+    }
+
+    private static final class Chunk {
+        private final String text;
+        private final long hash;
+        private final long power; // BASE^length mod MOD
+        private final int newlines;
+
+        Chunk(String text) {
+            this.text = text;
+            long h = 0;
+            long p = 1;
+            int n = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                h = add(mul(h, BASE), c);
+                p = mul(p, BASE);
+                if (c == '\n') {
+                    n++;
+                }
+            }
+            this.hash = h;
+            this.power = p;
+            this.newlines = n;
+        }
+    }
+}
@@ -92,43 +92,158 @@ public class OTUtils {
          return inverse;
      }
 
-//     public static TextOperation compose(TextOperation op1, TextOperation op2){
-//
-//         if(op1.getTargetLength() != op2.getBaseLength()){
-//             throw new IllegalArgumentException("Compose error: op1 target length (" + op1.getTargetLength() +
-//                     ") must match op2 base length (" + op2.getBaseLength() + ").");
-//         }
-//
-//         TextOperation composed = new TextOperation();
-//         List<Object> ops1 = op1.getOps();
-//         List<Object> ops2 = op2.getOps();
-//         int i1 = 0;
-//         int i2 = 0;
-//         Object currOperation1 = (i1 < ops1.size())? ops1.get(i1++):null;
-//         Object currOperation2 = (i2 < ops2.size())? ops2.get(i2++):null;
-//
-//         while(currOperation1 != null && currOperation2 != null){
-//
-//             if(TextOperation.isDelete(currOperation1)){
-//                 composed.delete((Integer) currOperation1);
-//                 currOperation1 = (i1 < ops1.size())?ops1.get(i1++):null;
-//                 continue;
-//             }
-//             if(TextOperation.isInsert(currOperation2)){
-//                 composed.insert((String)currOperation2);
-//                 currOperation2 = (i2 < ops2.size())?ops2.get(i2++):null;
-//                 continue;
-//             }
-//
-//             if(currOperation1 == null){
-//                 throw new IllegalArgumentException("Cannot compose: op2 is longer than op1 affects.");
-//             }
-//             if(currOperation2 == null){
-//                 throw new IllegalArgumentException("Cannot compose: op1 is longer than op2 affects.");
-//             }
-//
-//         }
-//     }
+    /**
+     * Moves a position in the document through an operation.
+     * Based on ot.js Selection.Range.transform / transformIndex
+     *
+     * @param index     Character offset in the document the operation is based on.
+     * @param operation The operation being applied.
+     * @return The same logical position in the document after the operation.
+     * @Work
+     * Inserts before the position push it right, deletes before it pull it left
+     * (but never past the start of the deleted range). Anything after the position is ignored.
+     */
+    public static int transformIndex(int index, TextOperation operation) {
+        int newIndex = index;
+        int remaining = index;
+        for (Object op : operation.getOps()) {
+            if (TextOperation.isRetain(op)) {
+                remaining -= (Integer) op;
+            } else if (TextOperation.isInsert(op)) {
+                newIndex += ((String) op).length();
+            } else if (TextOperation.isDelete(op)) {
+                int deleteCount = -(Integer) op;
+                newIndex -= Math.min(remaining, deleteCount);
+                remaining -= deleteCount;
+            }
+            if (remaining < 0) {
+                break;
+            }
+        }
+        return newIndex;
+    }
+
+    /**
+     * Composes two consecutive operations into a single operation.
+     * Based on ot.js TextOperation.prototype.compose
+     *
+     * @param operation1 The operation applied first.
+     * @param operation2 The operation applied after operation1.
+     * @return An operation that has the same effect as applying operation1 and then operation2.
+     * @Work
+     * apply(apply(doc, op1), op2) == apply(doc, compose(op1, op2)).
+     * op1's deletes and op2's inserts pass straight through, everything else is
+     * walked side by side the same way transform() does it.
+     *
+     * @throws IllegalArgumentException If op1's target length doesn't match op2's base length.
+     */
+    public static TextOperation compose(TextOperation operation1, TextOperation operation2) {
+        if (operation1.getTargetLength() != operation2.getBaseLength()) {
+            throw new IllegalArgumentException("Compose error: op1 target length (" + operation1.getTargetLength() +
+                    ") must match op2 base length (" + operation2.getBaseLength() + ").");
+        }
+
+        TextOperation composed = new TextOperation();
+        List<Object> ops1 = operation1.getOps();
+        List<Object> ops2 = operation2.getOps();
+        int i1 = 0, i2 = 0;
+        Object op1 = (i1 < ops1.size()) ? ops1.get(i1++) : null;
+        Object op2 = (i2 < ops2.size()) ? ops2.get(i2++) : null;
+
+        while (op1 != null || op2 != null) {
+
+            // op1 deleted it, op2 never saw it
+            if (TextOperation.isDelete(op1)) {
+                composed.delete((Integer) op1);
+                op1 = (i1 < ops1.size()) ? ops1.get(i1++) : null;
+                continue;
+            }
+            // op2 inserts something op1 never saw
+            if (TextOperation.isInsert(op2)) {
+                composed.insert((String) op2);
+                op2 = (i2 < ops2.size()) ? ops2.get(i2++) : null;
+                continue;
+            }
+
+            if (op1 == null) {
+                throw new IllegalArgumentException("Cannot compose operations: first operation is too short.");
+            }
+            if (op2 == null) {
+                throw new IllegalArgumentException("Cannot compose operations: first operation is too long.");
+            }
+
+            if (TextOperation.isRetain(op1) && TextOperation.isRetain(op2)) {
+                int op1Retain = (Integer) op1;
+                int op2Retain = (Integer) op2;
+                if (op1Retain > op2Retain) {
+                    composed.retain(op2Retain);
+                    op1 = op1Retain - op2Retain;
+                    op2 = (i2 < ops2.size()) ? ops2.get(i2++) : null;
+                } else if (op1Retain == op2Retain) {
+                    composed.retain(op1Retain);
+                    op1 = (i1 < ops1.size()) ? ops1.get(i1++) : null;
+                    op2 = (i2 < ops2.size()) ? ops2.get(i2++) : null;
+                } else {
+                    composed.retain(op1Retain);
+                    op2 = op2Retain - op1Retain;
+                    op1 = (i1 < ops1.size()) ? ops1.get(i1++) : null;
+                }
+            }
+            // op1 inserted text that op2 deletes again -> nothing survives
+            else if (TextOperation.isInsert(op1) && TextOperation.isDelete(op2)) {
+                String op1Insert = (String) op1;
+                int op2Delete = -(Integer) op2;
+                if (op1Insert.length() > op2Delete) {
+                    op1 = op1Insert.substring(op2Delete);
+                    op2 = (i2 < ops2.size()) ? ops2.get(i2++) : null;
+                } else if (op1Insert.length() == op2Delete) {
+                    op1 = (i1 < ops1.size()) ? ops1.get(i1++) : null;
+                    op2 = (i2 < ops2.size()) ? ops2.get(i2++) : null;
+                } else {
+                    op2 = -(op2Delete - op1Insert.length());
+                    op1 = (i1 < ops1.size()) ? ops1.get(i1++) : null;
+                }
+            }
+            else if (TextOperation.isInsert(op1) && TextOperation.isRetain(op2)) {
+                String op1Insert = (String) op1;
+                int op2Retain = (Integer) op2;
+                if (op1Insert.length() > op2Retain) {
+                    composed.insert(op1Insert.substring(0, op2Retain));
+                    op1 = op1Insert.substring(op2Retain);
+                    op2 = (i2 < ops2.size()) ? ops2.get(i2++) : null;
+                } else if (op1Insert.length() == op2Retain) {
+                    composed.insert(op1Insert);
+                    op1 = (i1 < ops1.size()) ? ops1.get(i1++) : null;
+                    op2 = (i2 < ops2.size()) ? ops2.get(i2++) : null;
+                } else {
+                    composed.insert(op1Insert);
+                    op2 = op2Retain - op1Insert.length();
+                    op1 = (i1 < ops1.size()) ? ops1.get(i1++) : null;
+                }
+            }
+            else if (TextOperation.isRetain(op1) && TextOperation.isDelete(op2)) {
+                int op1Retain = (Integer) op1;
+                int op2Delete = (Integer) op2;
+                if (op1Retain > -op2Delete) {
+                    composed.delete(op2Delete);
+                    op1 = op1Retain + op2Delete;
+                    op2 = (i2 < ops2.size()) ? ops2.get(i2++) : null;
+                } else if (op1Retain == -op2Delete) {
+                    composed.delete(op2Delete);
+                    op1 = (i1 < ops1.size()) ? ops1.get(i1++) : null;
+                    op2 = (i2 < ops2.size()) ? ops2.get(i2++) : null;
+                } else {
+                    composed.delete(op1Retain);
+                    op2 = op2Delete + op1Retain;
+                    op1 = (i1 < ops1.size()) ? ops1.get(i1++) : null;
+                }
+            }
+            else {
+                throw new IllegalStateException("Unrecognized case in compose: op1=" + op1 + ", op2=" + op2);
+            }
+        }
+        return composed;
+    }
 
     /**
      * ================================
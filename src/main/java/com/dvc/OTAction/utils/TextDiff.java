@@ -0,0 +1,216 @@
+package com.dvc.OTAction.utils;
+
+import com.dvc.OTAction.dto.TextOperation;
+
+import java.util.Arrays;
+
+/**
+ * Computes a TextOperation that turns one text into another, for clients that only have the new full text.
+ *
+ * Myers' O(ND) diff in its linear space form: common prefix and suffix are trimmed, then the middle snake
+ * of the remaining region is found by running the search forwards and backwards at the same time, and the
+ * two halves on either side of it are diffed recursively. The middle snake halves the edit distance, so the
+ * recursion is only log(D) deep, and the two diagonal arrays are the only memory besides the output.
+ *
+ * Bounds: the diagonal arrays never cover more than maxEdits edits, and the search gives up at the deadline.
+ * A region that hits either bound is replaced as a whole (delete + insert), so the result is always a correct
+ * operation, just not a minimal one; isApproximate() tells the caller that happened.
+ */
+public final class TextDiff {
+
+    private static final long NO_OVERLAP = -1;
+    private static final long OVER_BUDGET = -2;
+
+    private final String a;
+    private final String b;
+    private final int maxEdits;
+    private final long deadlineNanos;
+    private final TextOperation operation = new TextOperation();
+    private boolean approximate;
+
+    // adjacent edits of the same kind are merged here first, TextOperation.insert would copy the string every time
+    private int pendingRetain;
+    private int pendingDelete;
+    private final StringBuilder pendingInsert = new StringBuilder();
+    private int inserted;
+    private int deleted;
+
+    private TextDiff(String oldText, String newText, int maxEdits, long timeoutNanos) {
+        this.a = oldText;
+        this.b = newText;
+        this.maxEdits = Math.max(1, maxEdits);
+        this.deadlineNanos = System.nanoTime() + timeoutNanos;
+    }
+
+    public static TextDiff compute(String oldText, String newText, int maxEdits, long timeoutNanos) {
+        TextDiff diff = new TextDiff(oldText, newText, maxEdits, timeoutNanos);
+        diff.diff(0, oldText.length(), 0, newText.length());
+        diff.flushChanges();
+        diff.flushRetain();
+        return diff;
+    }
+
+    public TextOperation getOperation() {
+        return operation;
+    }
+
+    public boolean isApproximate() {
+        return approximate;
+    }
+
+    public boolean isNoop() {
+        return inserted == 0 && deleted == 0;
+    }
+
+    public int getInserted() {
+        return inserted;
+    }
+
+    public int getDeleted() {
+        return deleted;
+    }
+
+    private void diff(int a0, int a1, int b0, int b1) {
+        int prefix = 0;
+        while (a0 + prefix < a1 && b0 + prefix < b1 && a.charAt(a0 + prefix) == b.charAt(b0 + prefix)) {
+            prefix++;
+        }
+        retain(prefix);
+        a0 += prefix;
+        b0 += prefix;
+
+        int suffix = 0;
+        while (a1 - suffix > a0 && b1 - suffix > b0 && a.charAt(a1 - suffix - 1) == b.charAt(b1 - suffix - 1)) {
+            suffix++;
+        }
+        a1 -= suffix;
+        b1 -= suffix;
+
+        if (a0 == a1) {
+            insert(b0, b1);
+        } else if (b0 == b1) {
+            delete(a1 - a0);
+        } else {
+            long split = System.nanoTime() > deadlineNanos ? OVER_BUDGET : middleSnake(a0, a1, b0, b1);
+            if (split < 0) {
+                // NO_OVERLAP: the two texts have nothing in common, so replacing is the minimal edit anyway
+                approximate |= split == OVER_BUDGET;
+                delete(a1 - a0);
+                insert(b0, b1);
+            } else {
+                int x = (int) (split >>> 32);
+                int y = (int) split;
+                diff(a0, a0 + x, b0, b0 + y);
+                diff(a0 + x, a1, b0 + y, b1);
+            }
+        }
+        retain(suffix);
+    }
+
+    /**
+     * Finds where the forward and backward D-paths of a[a0, a1) vs b[b0, b1) meet. Returns the split point
+     * (x << 32 | y, relative to a0 / b0), NO_OVERLAP when the texts share no character, or OVER_BUDGET when
+     * the edit or time budget ran out first.
+     */
+    private long middleSnake(int a0, int a1, int b0, int b1) {
+        int n = a1 - a0;
+        int m = b1 - b0;
+        boolean capped = (n + m + 1) / 2 > maxEdits;
+        int maxD = capped ? maxEdits : (n + m + 1) / 2;
+        int offset = maxD;
+        int[] forward = new int[2 * maxD + 2];
+        int[] backward = new int[2 * maxD + 2];
+        Arrays.fill(forward, -1);
+        Arrays.fill(backward, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        // with an odd delta the paths meet while extending forwards, otherwise while extending backwards
+        boolean checkForward = (delta & 1) != 0;
+        // diagonals that ran off the edge of the grid are not searched again
+        int kStartF = 0, kEndF = 0, kStartB = 0, kEndB = 0;
+
+        for (int d = 0; d < maxD; d++) {
+            if ((d & 63) == 0 && d > 0 && System.nanoTime() > deadlineNanos) {
+                return OVER_BUDGET;
+            }
+            for (int k = -d + kStartF; k <= d - kEndF; k += 2) {
+                int idx = offset + k;
+                int x = (k == -d || (k != d && forward[idx - 1] < forward[idx + 1])) ? forward[idx + 1] : forward[idx - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a.charAt(a0 + x) == b.charAt(b0 + y)) {
+                    x++;
+                    y++;
+                }
+                forward[idx] = x;
+                if (x > n) {
+                    kEndF += 2;
+                } else if (y > m) {
+                    kStartF += 2;
+                } else if (checkForward) {
+                    int backIdx = offset + delta - k;
+                    if (backIdx >= 0 && backIdx < backward.length && backward[backIdx] != -1 && x >= n - backward[backIdx]) {
+                        return ((long) x << 32) | y;
+                    }
+                }
+            }
+            for (int k = -d + kStartB; k <= d - kEndB; k += 2) {
+                int idx = offset + k;
+                int x = (k == -d || (k != d && backward[idx - 1] < backward[idx + 1])) ? backward[idx + 1] : backward[idx - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a.charAt(a1 - x - 1) == b.charAt(b1 - y - 1)) {
+                    x++;
+                    y++;
+                }
+                backward[idx] = x;
+                if (x > n) {
+                    kEndB += 2;
+                } else if (y > m) {
+                    kStartB += 2;
+                } else if (!checkForward) {
+                    int forwardIdx = offset + delta - k;
+                    if (forwardIdx >= 0 && forwardIdx < forward.length && forward[forwardIdx] != -1) {
+                        int fx = forward[forwardIdx];
+                        int fy = fx - (forwardIdx - offset);
+                        if (fx >= n - x) {
+                            return ((long) fx << 32) | fy;
+                        }
+                    }
+                }
+            }
+        }
+        return capped ? OVER_BUDGET : NO_OVERLAP;
+    }
+
+    private void retain(int n) {
+        if (n == 0) {
+            return;
+        }
+        flushChanges();
+        pendingRetain += n;
+    }
+
+    private void delete(int n) {
+        flushRetain();
+        pendingDelete += n;
+        deleted += n;
+    }
+
+    private void insert(int from, int to) {
+        flushRetain();
+        pendingInsert.append(b, from, to);
+        inserted += to - from;
+    }
+
+    private void flushRetain() {
+        operation.retain(pendingRetain);
+        pendingRetain = 0;
+    }
+
+    private void flushChanges() {
+        operation.insert(pendingInsert.toString());
+        operation.delete(pendingDelete);
+        pendingInsert.setLength(0);
+        pendingDelete = 0;
+    }
+}
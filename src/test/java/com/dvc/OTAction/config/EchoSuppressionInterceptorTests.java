@@ -0,0 +1,40 @@
+package com.dvc.OTAction.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+
+class EchoSuppressionInterceptorTests {
+
+	private final EchoSuppressionInterceptor interceptor = new EchoSuppressionInterceptor();
+	private final MessageChannel channel = mock(MessageChannel.class);
+
+	@Test
+	void onlyTheAuthorsCopyIsDropped() {
+		assertNull(interceptor.preSend(copyFor("author", "author"), channel));
+		Message<?> other = copyFor("other", "author");
+		assertSame(other, interceptor.preSend(other, channel));
+		// ops from HTTP ingest have no origin session, everyone gets them
+		Message<?> ingested = copyFor("author", null);
+		assertSame(ingested, interceptor.preSend(ingested, channel));
+	}
+
+	// one subscriber's copy of a broadcast, as the broker hands it to the client outbound channel
+	private static Message<byte[]> copyFor(String subscriberSession, String originSession) {
+		SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+		headers.setSessionId(subscriberSession);
+		headers.setDestination("/topic/sessions");
+		if (originSession != null) {
+			headers.setHeader(EchoSuppressionInterceptor.ORIGIN_SESSION_HEADER, originSession);
+		}
+		return MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+	}
+
+}
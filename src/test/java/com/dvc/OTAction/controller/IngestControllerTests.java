@@ -0,0 +1,44 @@
+package com.dvc.OTAction.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {"ot.store=memory", "ot.warmstart.enabled=false",
+		"ot.admission.client-burst=2", "ot.admission.client-ops-per-sec=0.001"})
+@AutoConfigureMockMvc
+class IngestControllerTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Test
+	void ingestGoesThroughAdmissionControl() throws Exception {
+		mockMvc.perform(ingest("tool", 0, "hello")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.revision").value(1));
+		// a revision the document never had can not be applied, resending will not help
+		mockMvc.perform(ingest("tool", 5, "hello world")).andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.reason").value("REJECTED"));
+		mockMvc.perform(ingest("tool", 1, "hello world")).andExpect(status().isTooManyRequests())
+				.andExpect(jsonPath("$.reason").value("CLIENT_RATE"))
+				.andExpect(header().exists("Retry-After"));
+		mockMvc.perform(ingest("other-tool", 1, "hello world")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.revision").value(2));
+	}
+
+	private static MockHttpServletRequestBuilder ingest(String clientId, int revision, String content) {
+		return post("/ot/ingest").contentType(MediaType.APPLICATION_JSON).content(String.format(
+				"{\"sessionId\":\"s\",\"documentId\":\"d\",\"clientId\":\"%s\",\"revision\":%d,\"content\":\"%s\"}",
+				clientId, revision, content));
+	}
+
+}
@@ -0,0 +1,136 @@
+package com.dvc.OTAction.controller;
+
+import com.codecafe.backend.dto.IncomingOperationPayload;
+import com.dvc.OTAction.service.AdmissionControl;
+import com.dvc.OTAction.service.DocumentLoadTracker;
+import com.dvc.OTAction.service.HotDocumentExecutor;
+import com.dvc.OTAction.dto.TextOperation;
+import com.dvc.OTAction.service.OperationBroadcaster;
+import com.dvc.OTAction.service.OtService;
+import com.dvc.OTAction.service.PersistencePipeline;
+import com.dvc.OTAction.service.PresenceService;
+import com.dvc.OTAction.store.InMemoryDocumentStore;
+import com.dvc.OTAction.utils.OTUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OtControllerTests {
+
+	private final OtService otService = mock(OtService.class);
+	private final OperationBroadcaster broadcaster = mock(OperationBroadcaster.class);
+	private final OtController controller = new OtController(otService, mock(PresenceService.class),
+			mock(DocumentLoadTracker.class), mock(HotDocumentExecutor.class), broadcaster,
+			new AdmissionControl(1000, 1000, 1000, 1000, 100));
+
+	@Test
+	void invalidOpIsRefusedWithoutRetryHint() {
+		when(otService.receiveOperation(anyString(), anyString(), anyInt(), any(), anyString()))
+				.thenThrow(new RuntimeException("Failed to process operation", new IllegalArgumentException("Invalid client revision")));
+		controller.handleOperation(payload(), SimpMessageHeaderAccessor.create(), null);
+
+		verify(broadcaster).refuse(eq("s"), eq("d"), eq("c"), eq(7), anyString());
+		verify(broadcaster, never()).reject(anyString(), anyString(), anyString(), anyInt(), anyString(), anyLong());
+	}
+
+	@Test
+	void fullPipelineIsRetriedLater() {
+		when(otService.receiveOperation(anyString(), anyString(), anyInt(), any(), anyString()))
+				.thenThrow(new RejectedExecutionException("Document s:d has 1024 operations waiting to be persisted"));
+		controller.handleOperation(payload(), SimpMessageHeaderAccessor.create(), null);
+
+		verify(broadcaster).reject("s", "d", "c", 7, "QUEUE_FULL", AdmissionControl.QUEUE_FULL_RETRY_MILLIS);
+		verify(broadcaster, never()).refuse(anyString(), anyString(), anyString(), anyInt(), anyString());
+	}
+
+	@Test
+	void failedLoadGivesTheAdmissionSlotBack() {
+		AdmissionControl admissionControl = new AdmissionControl(1000, 1000, 1000, 1000, 1);
+		OtController controller = new OtController(otService, mock(PresenceService.class),
+				mock(DocumentLoadTracker.class), mock(HotDocumentExecutor.class), broadcaster, admissionControl);
+		when(otService.getServerRevision("s", "d")).thenThrow(new UncheckedIOException(new IOException("store down")));
+		controller.handleOperation(payload(), SimpMessageHeaderAccessor.create(), null);
+		controller.handleOperation(payload(), SimpMessageHeaderAccessor.create(), null);
+
+		// one queued op per document allowed: the second would be QUEUE_FULL if the first had leaked its slot
+		verify(broadcaster, never()).reject(anyString(), anyString(), anyString(), anyInt(), eq("QUEUE_FULL"), anyLong());
+		verify(broadcaster, times(2)).refuse(eq("s"), eq("d"), eq("c"), eq(7), anyString());
+	}
+
+	@Test
+	void payloadWithoutIdsIsRefused() {
+		controller.handleOperation(new IncomingOperationPayload("c", 7, List.of("x"), null, "s"),
+				SimpMessageHeaderAccessor.create(), null);
+
+		verify(broadcaster).refuse(eq("s"), eq(null), eq("c"), eq(7), anyString());
+		verify(otService, never()).receiveOperation(any(), any(), anyInt(), any(), any());
+	}
+
+	@Test
+	void cursorSentWithAnOpMovesThroughTheOpsItsAuthorHadNotSeen() throws InterruptedException {
+		PersistencePipeline pipeline = new PersistencePipeline(1, 1024, 5000);
+		OtService service = new OtService(new OTUtils(), new ObjectMapper(), new InMemoryDocumentStore(), pipeline,
+				1024, Long.MAX_VALUE, 100, 256, 1000);
+		SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+		PresenceService presenceService = new PresenceService(service, messagingTemplate, 1000);
+		OtController controller = new OtController(service, presenceService, mock(DocumentLoadTracker.class),
+				mock(HotDocumentExecutor.class), new OperationBroadcaster(messagingTemplate),
+				new AdmissionControl(1000, 1000, 1000, 1000, 100));
+		try {
+			service.receiveOperation("s", "d", 0, new TextOperation().insert("hello"), "seed");
+			controller.handleOperation(new IncomingOperationPayload("b", 1, List.of("XX", 5), "d", "s"),
+					SimpMessageHeaderAccessor.create(), null);
+			// a has not seen b's op: its cursor is at the end of "hello!"
+			IncomingOperationPayload payload = new IncomingOperationPayload("a", 1, List.of(5, "!"), "d", "s");
+			payload.setCursorPosition(Map.of("index", 6));
+			controller.handleOperation(payload, SimpMessageHeaderAccessor.create(), null);
+			// a revision the document does not have is dropped, and does not break the flush for the others
+			presenceService.update("s", "d", "c", 99, Map.of("index", 0), null, null);
+			presenceService.flush();
+
+			assertEquals("XXhello!", service.getContent("s", "d"));
+			ArgumentCaptor<Object> messages = ArgumentCaptor.forClass(Object.class);
+			verify(messagingTemplate, atLeastOnce()).convertAndSend(eq("/topic/presence/s/d"), messages.capture());
+			assertEquals(1, messages.getAllValues().size());
+			Map<?, ?> presence = (Map<?, ?>) messages.getValue();
+			assertEquals("a", presence.get("clientId"));
+			assertEquals(3, presence.get("revision"));
+			assertEquals(Map.of("index", 8), presence.get("cursorPosition"));
+
+			// moving on with later ops still works
+			service.receiveOperation("s", "d", 3, new TextOperation().insert(">").retain(8), "b");
+			presenceService.flush();
+			verify(messagingTemplate, times(2)).convertAndSend(eq("/topic/presence/s/d"), messages.capture());
+			assertEquals(Map.of("index", 9), ((Map<?, ?>) messages.getValue()).get("cursorPosition"));
+		} finally {
+			service.shutdown();
+			pipeline.shutdown();
+		}
+	}
+
+	private static IncomingOperationPayload payload() {
+		return new IncomingOperationPayload("c", 7, List.of("x"), "d", "s");
+	}
+
+}
@@ -0,0 +1,116 @@
+package com.dvc.OTAction.controller;
+
+import com.dvc.OTAction.dto.TextOperation;
+import com.dvc.OTAction.service.OtService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {"ot.store=memory", "ot.warmstart.enabled=false"})
+@AutoConfigureMockMvc
+class OtInitTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+	@Autowired
+	private OtService otService;
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Test
+	void streamMatchesInit() throws Exception {
+		// several chunks, and a trailing newline
+		String content = "first line\n" + "x".repeat(20000) + "\nlast line\n";
+		otService.receiveOperation("stream", "doc", 0, new TextOperation().insert(content), "c");
+
+		JsonNode init = objectMapper.readTree(mockMvc.perform(get("/ot/init").param("sessionId", "stream").param("documentId", "doc"))
+				.andExpect(status().isOk()).andReturn().getResponse().getContentAsString());
+		MvcResult async = mockMvc.perform(get("/ot/init/stream").param("sessionId", "stream").param("documentId", "doc"))
+				.andExpect(request().asyncStarted()).andReturn();
+		String[] lines = mockMvc.perform(asyncDispatch(async)).andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsString().split("\n");
+
+		JsonNode header = objectMapper.readTree(lines[0]);
+		assertEquals(init.get("revision").asInt(), header.get("revision").asInt());
+		assertEquals(init.get("checksum").asText(), header.get("checksum").asText());
+		assertEquals(content.length(), header.get("length").asInt());
+		assertEquals(4, header.get("lines").asInt());
+		StringBuilder streamed = new StringBuilder();
+		for (int i = 1; i < lines.length; i++) {
+			JsonNode chunk = objectMapper.readTree(lines[i]);
+			assertEquals(streamed.length(), chunk.get("offset").asInt());
+			streamed.append(chunk.get("content").asText());
+		}
+		assertEquals(init.get("content").asText(), streamed.toString());
+		assertEquals(content, streamed.toString());
+	}
+
+	@Test
+	void rangesAndLines() throws Exception {
+		otService.receiveOperation("ranges", "doc", 0, new TextOperation().insert("ab\ncd\n"), "c");
+
+		mockMvc.perform(get("/ot/range").param("sessionId", "ranges").param("documentId", "doc")
+						.param("offset", "1").param("length", "100"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.content").value("b\ncd\n"))
+				.andExpect(jsonPath("$.line").value(0))
+				.andExpect(jsonPath("$.documentLength").value(6))
+				.andExpect(jsonPath("$.documentLines").value(3))
+				.andExpect(jsonPath("$.revision").value(1));
+		mockMvc.perform(get("/ot/lines").param("sessionId", "ranges").param("documentId", "doc")
+						.param("from", "1").param("count", "5"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.content").value("cd\n"))
+				.andExpect(jsonPath("$.offset").value(3))
+				.andExpect(jsonPath("$.line").value(1));
+		// the empty line after the trailing newline
+		mockMvc.perform(get("/ot/lines").param("sessionId", "ranges").param("documentId", "doc")
+						.param("from", "2").param("count", "1"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.content").value(""))
+				.andExpect(jsonPath("$.offset").value(6));
+
+		mockMvc.perform(get("/ot/range").param("sessionId", "ranges").param("documentId", "doc")
+						.param("offset", "7").param("length", "1"))
+				.andExpect(status().isBadRequest());
+		mockMvc.perform(get("/ot/range").param("sessionId", "ranges").param("documentId", "doc")
+						.param("offset", "-1").param("length", "1"))
+				.andExpect(status().isBadRequest());
+		mockMvc.perform(get("/ot/lines").param("sessionId", "ranges").param("documentId", "doc")
+						.param("from", "3").param("count", "1"))
+				.andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.error").exists());
+	}
+
+	@Test
+	void emptyDocument() throws Exception {
+		mockMvc.perform(get("/ot/lines").param("sessionId", "empty").param("documentId", "doc")
+						.param("from", "0").param("count", "10"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.content").value(""))
+				.andExpect(jsonPath("$.documentLines").value(1));
+		mockMvc.perform(get("/ot/range").param("sessionId", "empty").param("documentId", "doc")
+						.param("offset", "0").param("length", "10"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.content").value(""))
+				.andExpect(jsonPath("$.revision").value(0));
+		MvcResult async = mockMvc.perform(get("/ot/init/stream").param("sessionId", "empty").param("documentId", "doc"))
+				.andExpect(request().asyncStarted()).andReturn();
+		String[] lines = mockMvc.perform(asyncDispatch(async)).andReturn().getResponse().getContentAsString().split("\n");
+		assertEquals(1, lines.length);
+		assertEquals(0, objectMapper.readTree(lines[0]).get("length").asInt());
+	}
+
+}
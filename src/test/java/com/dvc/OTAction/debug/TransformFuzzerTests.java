@@ -0,0 +1,36 @@
+package com.dvc.OTAction.debug;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TransformFuzzerTests {
+
+	// raise with -Dot.fuzz.seconds=300 to use this as a longer gate
+	private static final long BUDGET_SECONDS = Long.getLong("ot.fuzz.seconds", 3);
+
+	@Test
+	void transformAndComposeConverge() throws InterruptedException {
+		TransformFuzzer.Report report = new TransformFuzzer().run(Duration.ofSeconds(BUDGET_SECONDS),
+				Runtime.getRuntime().availableProcessors(), 42L);
+		assertTrue(report.isClean(), () -> report + "\n" + String.join("\n", report.getFailures()));
+		assertTrue(report.getIterations() > 0);
+	}
+
+	@Test
+	void parallelApplyMatchesApply() throws InterruptedException {
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			// threshold 0: every fuzz document is split into slices of a few characters
+			TransformFuzzer.Report report = new TransformFuzzer((doc, op) -> ParallelApply.apply(doc, op, pool, 0))
+					.run(Duration.ofSeconds(BUDGET_SECONDS), Runtime.getRuntime().availableProcessors(), 43L);
+			assertTrue(report.isClean(), () -> report + "\n" + String.join("\n", report.getFailures()));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,84 @@
+package com.dvc.OTAction.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionControlTests {
+
+	// refills are far too slow to matter while a test runs
+	private static final double NO_REFILL = 0.001;
+
+	@Test
+	void clientBucketLimitsOnlyThatClient() {
+		AdmissionControl admission = new AdmissionControl(NO_REFILL, 3, 1000, 1000, 100);
+		for (int i = 0; i < 3; i++) {
+			assertTrue(admit(admission, "d", "bot").isAdmitted());
+		}
+		AdmissionControl.Decision rejected = admit(admission, "d", "bot");
+		assertEquals(AdmissionControl.Reason.CLIENT_RATE, rejected.getRejectedFor());
+		assertTrue(rejected.getRetryAfterMillis() > 1000, "retry after the bucket has a token again");
+		assertTrue(admit(admission, "d", "human").isAdmitted());
+	}
+
+	@Test
+	void documentBucketRefundsTheClientToken() {
+		AdmissionControl admission = new AdmissionControl(NO_REFILL, 3, NO_REFILL, 2, 100);
+		assertTrue(admit(admission, "busy", "a").isAdmitted());
+		assertTrue(admit(admission, "busy", "b").isAdmitted());
+		assertEquals(AdmissionControl.Reason.DOCUMENT_RATE, admit(admission, "busy", "a").getRejectedFor());
+		// a's token for the rejected op was given back: two more fit on another document
+		assertTrue(admit(admission, "other", "a").isAdmitted());
+		assertTrue(admit(admission, "other", "a").isAdmitted());
+		assertEquals(AdmissionControl.Reason.CLIENT_RATE, admit(admission, "other", "a").getRejectedFor());
+	}
+
+	@Test
+	void inFlightCapPerDocument() {
+		AdmissionControl admission = new AdmissionControl(1000, 1000, 1000, 1000, 2);
+		assertTrue(admit(admission, "d", "a").isAdmitted());
+		assertTrue(admit(admission, "d", "b").isAdmitted());
+		AdmissionControl.Decision full = admit(admission, "d", "c");
+		assertEquals(AdmissionControl.Reason.QUEUE_FULL, full.getRejectedFor());
+		assertEquals(AdmissionControl.QUEUE_FULL_RETRY_MILLIS, full.getRetryAfterMillis());
+		assertTrue(admit(admission, "other", "c").isAdmitted());
+
+		admission.complete("s", "d");
+		assertTrue(admit(admission, "d", "c").isAdmitted());
+	}
+
+	@Test
+	void slowDownOnceTheBucketRunsLow() {
+		AdmissionControl admission = new AdmissionControl(NO_REFILL, 8, 1000, 1000, 100);
+		// low means under a quarter of the burst, i.e. fewer than 2 of 8 tokens left
+		for (int i = 0; i < 6; i++) {
+			AdmissionControl.Decision decision = admit(admission, "d", "a");
+			assertTrue(decision.isAdmitted());
+			assertFalse(decision.isSlowDown(), "op " + i);
+		}
+		AdmissionControl.Decision low = admit(admission, "d", "a");
+		assertTrue(low.isAdmitted());
+		assertTrue(low.isSlowDown());
+		// at most one hint per second
+		assertFalse(admit(admission, "d", "a").isSlowDown());
+		AdmissionControl.Decision rejected = admit(admission, "d", "a");
+		assertFalse(rejected.isAdmitted());
+		assertTrue(rejected.isSlowDown());
+	}
+
+	@Test
+	void onlyAFullPipelineIsRetryable() {
+		assertTrue(AdmissionControl.isRetryable(new RuntimeException(new RejectedExecutionException("pipeline full"))));
+		assertFalse(AdmissionControl.isRetryable(new RuntimeException(new IllegalArgumentException("Invalid client revision"))));
+		assertFalse(AdmissionControl.isRetryable(new IllegalStateException("Invalid operation format")));
+	}
+
+	private static AdmissionControl.Decision admit(AdmissionControl admission, String documentId, String clientId) {
+		return admission.tryAdmit("s", documentId, clientId);
+	}
+
+}
@@ -0,0 +1,61 @@
+package com.dvc.OTAction.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class DocumentLoadTrackerTests {
+
+	private final OtService otService = mock(OtService.class);
+
+	@Test
+	void enoughEditorsMakeADocumentHot() {
+		// rate thresholds out of reach, so only the editor count decides
+		DocumentLoadTracker tracker = new DocumentLoadTracker(otService, 1e9, 3, 1e9, 2, 0, 60000);
+		for (String client : List.of("a", "b", "c")) {
+			tracker.recordOperation("s", "crowded", client, 0);
+		}
+		tracker.recordOperation("s", "quiet", "a", 0);
+		tracker.recordOperation("s", "quiet", "b", 0);
+		tracker.evaluate();
+
+		assertTrue(tracker.isHot("s", "crowded"));
+		assertFalse(tracker.isHot("s", "quiet"));
+		verify(otService).setHistoryCaching("s", "crowded", true);
+		verify(otService, never()).setHistoryCaching("s", "quiet", true);
+	}
+
+	@Test
+	void hotDocumentOnlyCoolsDownAfterTheCoolDown() {
+		DocumentLoadTracker patient = new DocumentLoadTracker(otService, 20, 100, 5, 100, 60000, 60000);
+		DocumentLoadTracker eager = new DocumentLoadTracker(otService, 20, 100, 5, 100, 0, 60000);
+		for (int i = 0; i < 1000; i++) {
+			patient.recordOperation("s", "patient", "a", 0);
+			eager.recordOperation("s", "eager", "a", 0);
+		}
+		patient.evaluate();
+		eager.evaluate();
+		assertTrue(patient.isHot("s", "patient"));
+		assertTrue(eager.isHot("s", "eager"));
+
+		// no more ops: the smoothed rate halves on every evaluation and drops below the exit threshold
+		for (int i = 0; i < 40; i++) {
+			patient.evaluate();
+			eager.evaluate();
+		}
+		assertTrue(patient.isHot("s", "patient"));
+		assertFalse(eager.isHot("s", "eager"));
+		verify(otService).setHistoryCaching("s", "eager", false);
+		List<Map<String, Object>> switches = eager.getSwitchEvents();
+		assertEquals(List.of("NORMAL", "HOT"), switches.stream().map(event -> event.get("mode")).toList());
+	}
+
+}
@@ -0,0 +1,93 @@
+package com.dvc.OTAction.service;
+
+import com.dvc.OTAction.dto.AppliedOperation;
+import com.dvc.OTAction.dto.TextOperation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class HotDocumentExecutorTests {
+
+	private final OtService otService = mock(OtService.class);
+	private final HotDocumentExecutor executor =
+			new HotDocumentExecutor(otService, new OperationBroadcaster(mock(SimpMessagingTemplate.class)), 4, 8);
+
+	HotDocumentExecutorTests() {
+		doAnswer(invocation -> {
+			((Runnable) invocation.getArgument(0)).run();
+			return null;
+		}).when(otService).runBatch(any());
+	}
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdown();
+	}
+
+	@Test
+	void cooledDownDocumentKeepsItsQueueUntilDrained() throws InterruptedException {
+		List<Integer> applied = Collections.synchronizedList(new ArrayList<>());
+		List<Integer> ran = Collections.synchronizedList(new ArrayList<>());
+		CountDownLatch firstBlocked = new CountDownLatch(1);
+		CountDownLatch allDone = new CountDownLatch(300);
+		Consumer<AppliedOperation> onApplied = result -> {
+			applied.add(result.getRevision());
+			allDone.countDown();
+		};
+
+		// hot: the first op holds up the drain, so everything behind it is still waiting when the document cools down
+		executor.submit("s", "d", operation(0, ran, firstBlocked), onApplied, e -> { });
+		for (int i = 1; i < 200; i++) {
+			executor.submit("s", "d", operation(i, ran, null), onApplied, e -> { });
+		}
+		for (int i = 200; i < 300; i++) {
+			assertTrue(executor.submitIfQueued("s", "d", operation(i, ran, null), onApplied, e -> { }));
+		}
+		assertFalse(executor.submitIfQueued("s", "other", operation(-1, ran, null), onApplied, e -> { }));
+		firstBlocked.countDown();
+		assertTrue(allDone.await(10, TimeUnit.SECONDS));
+
+		List<Integer> expected = IntStream.range(0, 300).boxed().collect(Collectors.toList());
+		assertEquals(expected, ran);
+		assertEquals(expected, applied);
+		// drained: the queue is gone and the caller runs the next op itself
+		long deadline = System.currentTimeMillis() + 10000;
+		while (executor.getQueueCount() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(0, executor.getQueueCount());
+		assertFalse(executor.submitIfQueued("s", "d", operation(300, ran, null), onApplied, e -> { }));
+	}
+
+	private static Supplier<AppliedOperation> operation(int index, List<Integer> ran, CountDownLatch blockedOn) {
+		return () -> {
+			if (blockedOn != null) {
+				try {
+					blockedOn.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			ran.add(index);
+			return new AppliedOperation(new TextOperation(), index, "");
+		};
+	}
+
+}
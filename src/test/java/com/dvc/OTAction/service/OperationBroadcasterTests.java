@@ -0,0 +1,53 @@
+package com.dvc.OTAction.service;
+
+import com.dvc.OTAction.dto.AppliedOperation;
+import com.dvc.OTAction.dto.TextOperation;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+class OperationBroadcasterTests {
+
+	private final SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+	private final OperationBroadcaster broadcaster = new OperationBroadcaster(messagingTemplate);
+
+	@Test
+	void runsOfOneClientAreAckedTogetherBeforeTheNextOtherOp() {
+		broadcaster.batchAcknowledgements(() -> {
+			apply("c", 1);
+			apply("c", 2);
+			apply("c", 3);
+			apply("d", 4);
+			apply("c", 5);
+		});
+
+		ArgumentCaptor<String> destinations = ArgumentCaptor.forClass(String.class);
+		ArgumentCaptor<Object> payloads = ArgumentCaptor.forClass(Object.class);
+		verify(messagingTemplate, atLeastOnce()).convertAndSend(destinations.capture(), payloads.capture());
+		List<String> sent = new ArrayList<>();
+		for (int i = 0; i < destinations.getAllValues().size(); i++) {
+			Map<?, ?> payload = (Map<?, ?>) payloads.getAllValues().get(i);
+			sent.add(destinations.getAllValues().get(i).equals("/topic/sessions")
+					? "op " + payload.get("revision")
+					: "ack " + payload.get("revision") + " x" + payload.get("count"));
+		}
+		// c's ACK for 1-3 goes out before the op of d that was transformed past them
+		assertEquals(List.of("op 1", "op 2", "op 3", "ack 3 x3", "op 4", "ack 4 x1", "op 5", "ack 5 x1"), sent);
+	}
+
+	private void apply(String clientId, int revision) {
+		AppliedOperation applied = new AppliedOperation(new TextOperation().insert("x"), revision, "checksum");
+		broadcaster.broadcast("s", "d", clientId, applied, null);
+		broadcaster.acknowledge("s", "d", clientId, applied);
+	}
+
+}
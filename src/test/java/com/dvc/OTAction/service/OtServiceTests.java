@@ -0,0 +1,327 @@
+package com.dvc.OTAction.service;
+
+import com.dvc.OTAction.dto.AppliedOperation;
+import com.dvc.OTAction.dto.TextOperation;
+import com.dvc.OTAction.dto.VersionedContent;
+import com.dvc.OTAction.store.DocumentSnapshot;
+import com.dvc.OTAction.store.InMemoryDocumentStore;
+import com.dvc.OTAction.utils.ChunkedText;
+import com.dvc.OTAction.utils.OTUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OtServiceTests {
+
+	private final PersistencePipeline pipeline = new PersistencePipeline(2, 1024, 5000);
+	private OtService service;
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		if (service != null) {
+			service.shutdown();
+		}
+		pipeline.shutdown();
+	}
+
+	@Test
+	void failingSnapshotWritesNeverFailOps() {
+		InMemoryDocumentStore store = new InMemoryDocumentStore() {
+			@Override
+			public void save(DocumentSnapshot snapshot) {
+				throw new UncheckedIOException(new IOException("disk full"));
+			}
+		};
+		// a budget of one byte: every op puts the working set over it
+		service = new OtService(new OTUtils(), new ObjectMapper(), store, pipeline, 1024, 1, 100, 256, 1000);
+		for (int i = 0; i < 20; i++) {
+			String documentId = "doc-" + (i % 4);
+			int revision = service.getServerRevision("s", documentId);
+			assertEquals(revision + 1, service.receiveOperation("s", documentId, revision,
+					new TextOperation().retain(revision).insert("x"), "c").getRevision());
+		}
+		service.enforceResidentBudget();
+		assertEquals(0, service.evictIdle(Long.MAX_VALUE, (sessionId, documentId) -> true));
+		assertEquals(4, service.getResidentDocumentCount());
+		assertEquals("xxxxx", service.getContent("s", "doc-3"));
+	}
+
+	@Test
+	void contentAtMatchesSequentialReplay() throws Exception {
+		// a checkpoint every 10 revisions but at most 4 of them, so they are thinned out all the time,
+		// and replays of 50 or more ops compose their segments on the fork-join pool
+		service = new OtService(new OTUtils(), new ObjectMapper(), new InMemoryDocumentStore(), pipeline,
+				1024, Long.MAX_VALUE, 10, 4, 50);
+		Random random = new Random(32);
+		List<String> expected = new ArrayList<>();
+		expected.add("");
+		long historyBytes = 0;
+		for (int revision = 0; revision < 300; revision++) {
+			String content = expected.get(revision);
+			TextOperation operation = revision == 0
+					? new TextOperation().insert(randomText(random, 20000))
+					: randomEdit(random, content.length());
+			expected.add(OTUtils.apply(content, operation));
+			service.receiveOperation("s", "d", revision, operation, "c");
+			historyBytes += 2L * new ObjectMapper().writeValueAsString(operation.getOps()).length();
+		}
+		// head and history alone; the older checkpoints hold chunks the head no longer has
+		assertTrue(service.getResidentBytes() > 2L * expected.get(300).length() + historyBytes);
+
+		List<Integer> revisions = new ArrayList<>();
+		for (int revision = 0; revision <= 300; revision++) {
+			revisions.add(revision);
+		}
+		Collections.shuffle(revisions, random);
+		for (int pass = 0; pass < 2; pass++) {
+			// the second pass starts from the checkpoints the first one left behind
+			for (int revision : revisions) {
+				VersionedContent content = service.getContentAt("s", "d", revision);
+				assertEquals(expected.get(revision), content.getContent(), "revision " + revision);
+				assertEquals(ChunkedText.of(expected.get(revision)).checksum(), content.getChecksum(), "revision " + revision);
+			}
+		}
+	}
+
+	@Test
+	void appendsFailingWithIoErrorsAreRetriedInOrder() throws InterruptedException {
+		AtomicInteger failures = new AtomicInteger();
+		InMemoryDocumentStore store = new InMemoryDocumentStore() {
+			@Override
+			public void appendOperation(String sessionId, String documentId, int revision, String operationJson) {
+				if (revision % 5 == 0 && failures.getAndIncrement() % 3 != 2) {
+					throw new UncheckedIOException(new IOException("connection reset"));
+				}
+				super.appendOperation(sessionId, documentId, revision, operationJson);
+			}
+		};
+		service = new OtService(new OTUtils(), new ObjectMapper(), store, pipeline, 1024, Long.MAX_VALUE, 100, 256, 1000);
+		for (int revision = 0; revision < 20; revision++) {
+			service.receiveOperation("s", "d", revision, new TextOperation().retain(revision).insert("x"), "c");
+		}
+		awaitPersisted();
+
+		assertEquals(20, store.readOperations("s", "d", 0).size());
+		assertEquals(8, pipeline.getRetriedCount());
+		assertEquals(0, pipeline.getFailedCount());
+	}
+
+	@Test
+	void nodesSharingAStoreCatchUpOnConflicts() {
+		InMemoryDocumentStore store = new InMemoryDocumentStore() {
+			@Override
+			public boolean isShared() {
+				return true;
+			}
+		};
+		service = new OtService(new OTUtils(), new ObjectMapper(), store, pipeline, 1024, Long.MAX_VALUE, 100, 256, 1000);
+		OtService other = new OtService(new OTUtils(), new ObjectMapper(), store, pipeline, 1024, Long.MAX_VALUE, 100, 256, 1000);
+		try {
+			assertEquals(0, other.getServerRevision("s", "d"));
+			AppliedOperation first = service.receiveOperation("s", "d", 0, new TextOperation().insert("abc"), "a");
+			assertEquals(1, first.getRevision());
+			assertTrue(first.getPulledOperations().isEmpty());
+
+			// still at revision 0 on the other node: its append conflicts, it pulls "abc" in and goes after it
+			AppliedOperation second = other.receiveOperation("s", "d", 0, new TextOperation().insert("x"), "b");
+			assertEquals(2, second.getRevision());
+			assertEquals(1, second.getPulledOperations().size());
+			assertEquals(1, second.getPulledOperations().get(0).getRevision());
+			assertEquals(List.of("[\"abc\"]", "[\"x\",3]"), store.readOperations("s", "d", 0));
+			assertEquals(0, pipeline.getPendingCount());
+
+			List<AppliedOperation> pulled = new ArrayList<>();
+			assertEquals(1, service.pullRemoteOperations((sessionId, documentId, operations) -> pulled.addAll(operations)));
+			assertEquals(2, pulled.get(0).getRevision());
+			assertEquals("xabc", service.getContent("s", "d"));
+			assertEquals(other.getDocument("s", "d").getChecksum(), service.getDocument("s", "d").getChecksum());
+			assertEquals(0, service.pullRemoteOperations((sessionId, documentId, operations) -> pulled.addAll(operations)));
+		} finally {
+			other.shutdown();
+		}
+	}
+
+	@Test
+	void slowLoadsDoNotHoldUpOtherDocuments() throws Exception {
+		CountDownLatch slowLoad = new CountDownLatch(1);
+		AtomicInteger loads = new AtomicInteger();
+		InMemoryDocumentStore store = new InMemoryDocumentStore() {
+			@Override
+			public Optional<DocumentSnapshot> load(String sessionId, String documentId) {
+				loads.incrementAndGet();
+				if (documentId.equals("slow")) {
+					try {
+						slowLoad.await();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return super.load(sessionId, documentId);
+			}
+		};
+		service = new OtService(new OTUtils(), new ObjectMapper(), store, pipeline, 1024, Long.MAX_VALUE, 100, 256, 1000);
+		CompletableFuture<String> slow = CompletableFuture.supplyAsync(() -> service.getContent("s", "slow"));
+		while (loads.get() == 0) {
+			Thread.sleep(1);
+		}
+
+		// the slow read is outside the lock, so this neither waits for it nor reads "fast" twice
+		assertEquals("", CompletableFuture.supplyAsync(() -> service.getContent("s", "fast")).get(5, TimeUnit.SECONDS));
+		assertEquals(0, service.getServerRevision("s", "fast"));
+		assertEquals(2, loads.get());
+
+		slowLoad.countDown();
+		assertEquals("", slow.get(5, TimeUnit.SECONDS));
+		service.getContent("s", "slow");
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	void pipelinedOpsAreNotTransformedAgainstTheirOwnClient() {
+		service = new OtService(new OTUtils(), new ObjectMapper(), new InMemoryDocumentStore(), pipeline, 1024, Long.MAX_VALUE, 100, 256, 1000);
+		service.receiveOperation("s", "d", 0, new TextOperation().insert("abc"), "seed");
+		// b's op gets in between a's two, which a sent without waiting for an ACK, both at revision 1
+		service.receiveOperation("s", "d", 1, new TextOperation().insert("X").retain(3), "a");
+		service.receiveOperation("s", "d", 1, new TextOperation().retain(3).insert("!"), "b");
+		service.receiveOperation("s", "d", 1, new TextOperation().retain(1).insert("Y").retain(3), "a");
+		assertEquals("XYabc!", service.getContent("s", "d"));
+	}
+
+	@Test
+	void pipeliningClientsConverge() {
+		service = new OtService(new OTUtils(), new ObjectMapper(), new InMemoryDocumentStore(), pipeline, 1024, Long.MAX_VALUE, 100, 256, 1000);
+		Random random = new Random(35);
+		List<SimulatedClient> clients = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			clients.add(new SimulatedClient("client-" + i));
+		}
+		for (int step = 0; step < 3000; step++) {
+			SimulatedClient client = clients.get(random.nextInt(clients.size()));
+			int action = random.nextInt(3);
+			if (step >= 2500 || action == 0) {
+				serveOne(client, clients);
+			} else if (action == 1) {
+				client.edit(random);
+			} else {
+				client.receiveOne();
+			}
+		}
+		for (SimulatedClient client : clients) {
+			while (!client.outbox.isEmpty()) {
+				serveOne(client, clients);
+			}
+		}
+		String content = service.getContent("s", "d");
+		for (SimulatedClient client : clients) {
+			while (!client.inbox.isEmpty()) {
+				client.receiveOne();
+			}
+			assertTrue(client.pending.isEmpty());
+			assertEquals(content, client.document, client.clientId);
+			assertEquals(service.getServerRevision("s", "d"), client.revision);
+		}
+	}
+
+	// the server side of one op: apply it, broadcast it to the others and ACK it, in that order like OperationBroadcaster
+	private void serveOne(SimulatedClient author, List<SimulatedClient> clients) {
+		Object[] sent = author.outbox.poll();
+		if (sent == null) {
+			return;
+		}
+		AppliedOperation applied = service.receiveOperation("s", "d", (Integer) sent[0], (TextOperation) sent[1], author.clientId);
+		for (SimulatedClient client : clients) {
+			client.inbox.add(new Object[] { client == author ? null : applied.getOperation(), applied.getRevision() });
+		}
+	}
+
+	/**
+	 * A client that sends every edit right away, on top of the ones not ACKed yet, and transforms incoming
+	 * ops past those (ot.js without the one-op-in-flight limit).
+	 */
+	private static class SimulatedClient {
+		private final String clientId;
+		private String document = "";
+		private int revision;
+		private final List<TextOperation> pending = new ArrayList<>();
+		// {revision, op} on their way to the server; {op or null for an ACK, revision} on their way back
+		private final Queue<Object[]> outbox = new ArrayDeque<>();
+		private final Queue<Object[]> inbox = new ArrayDeque<>();
+
+		SimulatedClient(String clientId) {
+			this.clientId = clientId;
+		}
+
+		void edit(Random random) {
+			TextOperation operation = document.isEmpty()
+					? new TextOperation().insert(randomText(random, 3))
+					: randomEdit(random, document.length());
+			document = OTUtils.apply(document, operation);
+			pending.add(operation);
+			outbox.add(new Object[] { revision, operation });
+		}
+
+		void receiveOne() {
+			Object[] received = inbox.poll();
+			if (received == null) {
+				return;
+			}
+			revision = (Integer) received[1];
+			if (received[0] == null) {
+				pending.remove(0);
+				return;
+			}
+			TextOperation operation = (TextOperation) received[0];
+			for (int i = 0; i < pending.size(); i++) {
+				List<TextOperation> pair = OTUtils.transform(pending.get(i), operation);
+				pending.set(i, pair.get(0));
+				operation = pair.get(1);
+			}
+			document = OTUtils.apply(document, operation);
+		}
+	}
+
+	private void awaitPersisted() throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (pipeline.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(0, pipeline.getPendingCount());
+	}
+
+	private static TextOperation randomEdit(Random random, int length) {
+		int position = random.nextInt(length + 1);
+		TextOperation operation = new TextOperation().retain(position);
+		if (random.nextBoolean() || position == length) {
+			operation.insert(randomText(random, 1 + random.nextInt(5)));
+			return operation.retain(length - position);
+		}
+		int delete = 1 + random.nextInt(Math.min(5, length - position));
+		return operation.delete(delete).retain(length - position - delete);
+	}
+
+	private static String randomText(Random random, int length) {
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append(random.nextInt(30) == 0 ? '\n' : (char) ('a' + random.nextInt(26)));
+		}
+		return sb.toString();
+	}
+
+}
@@ -0,0 +1,128 @@
+package com.dvc.OTAction.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PersistencePipelineTests {
+
+	// failures are checked through getFailedCount
+	private static final Consumer<RuntimeException> IGNORE = e -> { };
+
+	private PersistencePipeline pipeline;
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		pipeline.shutdown();
+	}
+
+	@Test
+	void tasksOfADocumentRunInSubmissionOrder() throws InterruptedException {
+		pipeline = new PersistencePipeline(4, 16, 5000);
+		List<List<Integer>> done = new ArrayList<>();
+		for (int d = 0; d < 4; d++) {
+			done.add(Collections.synchronizedList(new ArrayList<>()));
+		}
+		for (int i = 0; i < 400; i++) {
+			int d = i % 4;
+			int task = i / 4;
+			pipeline.reserve("doc-" + d, true);
+			pipeline.submit("doc-" + d, () -> done.get(d).add(task), IGNORE);
+		}
+		awaitIdle();
+
+		assertEquals(0, pipeline.getFailedCount());
+		List<Integer> expected = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+		for (List<Integer> document : done) {
+			assertEquals(expected, document);
+		}
+	}
+
+	@Test
+	void fullDocumentPushesBackAndOthersKeepGoing() throws InterruptedException {
+		pipeline = new PersistencePipeline(2, 2, 50);
+		CountDownLatch blocked = new CountDownLatch(1);
+		for (int i = 0; i < 2; i++) {
+			pipeline.reserve("full", true);
+			pipeline.submit("full", () -> await(blocked), IGNORE);
+		}
+
+		assertThrows(RejectedExecutionException.class, () -> pipeline.reserve("full", false));
+		assertThrows(RejectedExecutionException.class, () -> pipeline.reserve("full", true));
+		assertEquals(1, pipeline.getDelayedCount());
+		assertEquals(2, pipeline.getRejectedCount());
+		assertEquals(2, pipeline.getPendingCount());
+		// the limit is per document
+		pipeline.reserve("other", false);
+		pipeline.release("other");
+
+		blocked.countDown();
+		awaitIdle();
+		assertEquals(0, pipeline.getFailedCount());
+		pipeline.reserve("full", false);
+		pipeline.release("full");
+	}
+
+	@Test
+	void ioFailuresAreRetriedAtTheHeadWithoutReordering() throws InterruptedException {
+		pipeline = new PersistencePipeline(2, 16, 5000);
+		List<Integer> done = Collections.synchronizedList(new ArrayList<>());
+		List<RuntimeException> failures = Collections.synchronizedList(new ArrayList<>());
+		AtomicInteger attempts = new AtomicInteger();
+		for (int i = 0; i < 5; i++) {
+			int task = i;
+			pipeline.reserve("doc", true);
+			pipeline.submit("doc", () -> {
+				if (task == 1 && attempts.incrementAndGet() <= 3) {
+					throw new UncheckedIOException(new IOException("disk full"));
+				}
+				if (task == 3) {
+					throw new IllegalStateException("not an I/O error");
+				}
+				done.add(task);
+			}, failures::add);
+		}
+		awaitIdle();
+
+		assertEquals(List.of(0, 1, 2, 4), done);
+		assertEquals(4, attempts.get());
+		assertEquals(3, pipeline.getRetriedCount());
+		// only the non-I/O failure is final, and it does not stop the tasks behind it
+		assertEquals(1, pipeline.getFailedCount());
+		assertEquals(1, failures.size());
+		assertTrue(failures.get(0) instanceof IllegalStateException);
+	}
+
+	private void awaitIdle() throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (pipeline.getPendingCount() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(5);
+		}
+		assertEquals(0, pipeline.getPendingCount());
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,37 @@
+package com.dvc.OTAction.service;
+
+import com.dvc.OTAction.dto.TextOperation;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PresenceServiceTests {
+
+	// "hello world" -> "hey, world": the selection starts inside the replaced "llo", the cursor is at the end
+	private static final TextOperation OPERATION = new TextOperation().retain(2).delete(3).insert("y,").retain(6);
+
+	@Test
+	void offsetKeysAreTransformed() {
+		assertEquals(Map.of("index", 10), PresenceService.transformPositions(Map.of("index", 11), OPERATION));
+		assertEquals(Map.of("anchor", 4, "head", 8),
+				PresenceService.transformPositions(Map.of("anchor", 3, "head", 9), OPERATION));
+		assertEquals(Map.of("ranges", List.of(Map.of("anchor", 0, "head", 4), Map.of("anchor", 10, "head", 10))),
+				PresenceService.transformPositions(Map.of("ranges",
+						List.of(Map.of("anchor", 0, "head", 5), Map.of("anchor", 11, "head", 11))), OPERATION));
+	}
+
+	@Test
+	void otherShapesPassThroughUnchanged() {
+		Map<String, Object> lineAndColumn = Map.of("line", 3, "ch", 7);
+		assertEquals(lineAndColumn, PresenceService.transformPositions(lineAndColumn, OPERATION));
+		Map<String, Object> mixed = Map.of("index", 11, "line", 0, "column", 11, "color", "#f00");
+		assertEquals(Map.of("index", 10, "line", 0, "column", 11, "color", "#f00"),
+				PresenceService.transformPositions(mixed, OPERATION));
+		assertEquals(List.of(4, 5), PresenceService.transformPositions(List.of(4, 5), OPERATION));
+		assertEquals(null, PresenceService.transformPositions(null, OPERATION));
+	}
+
+}
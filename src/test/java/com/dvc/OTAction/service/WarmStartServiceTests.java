@@ -0,0 +1,67 @@
+package com.dvc.OTAction.service;
+
+import com.dvc.OTAction.store.DocumentSnapshot;
+import com.dvc.OTAction.store.DocumentSnapshotStore;
+import com.dvc.OTAction.store.DocumentStore.StoredDocument;
+import com.dvc.OTAction.utils.OTUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WarmStartServiceTests {
+
+	@TempDir
+	Path directory;
+
+	private final PersistencePipeline pipeline = new PersistencePipeline(2, 1024, 5000);
+	private OtService service;
+	private WarmStartService warmStart;
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		if (warmStart != null) {
+			warmStart.shutdown();
+		}
+		if (service != null) {
+			service.shutdown();
+		}
+		pipeline.shutdown();
+	}
+
+	@Test
+	void idsWithColonsComeBackAsTheirOwnDocuments() throws InterruptedException {
+		ObjectMapper objectMapper = new ObjectMapper();
+		DocumentSnapshotStore store = new DocumentSnapshotStore(objectMapper, directory.toString());
+		// both used to be stored under "a:b:c"
+		store.save(new DocumentSnapshot("a:b", "c", 1, "first", List.of("[\"first\"]")));
+		store.save(new DocumentSnapshot("a", "b:c", 1, "second", List.of("[\"second\"]")));
+
+		List<StoredDocument> listed = store.listDocuments();
+		listed.sort(Comparator.comparing(StoredDocument::sessionId));
+		assertEquals(List.of("a", "a:b"), listed.stream().map(StoredDocument::sessionId).toList());
+		assertEquals(List.of("b:c", "c"), listed.stream().map(StoredDocument::documentId).toList());
+
+		service = new OtService(new OTUtils(), objectMapper, store, pipeline, 1024, Long.MAX_VALUE, 100, 256, 1000);
+		warmStart = new WarmStartService(service, store, true, 2);
+		warmStart.onReady();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!"DONE".equals(warmStart.getStatus().get("state")) && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+
+		assertEquals("DONE", warmStart.getStatus().get("state"));
+		assertEquals(2, warmStart.getStatus().get("loaded"));
+		assertEquals(0, warmStart.getStatus().get("failed"));
+		assertEquals(2, service.getResidentDocumentCount());
+		assertEquals("first", service.getContent("a:b", "c"));
+		assertEquals("second", service.getContent("a", "b:c"));
+		assertEquals(OtService.Preload.ALREADY_LOADED, service.preload("a:b", "c"));
+	}
+}
@@ -0,0 +1,130 @@
+package com.dvc.OTAction.store;
+
+import com.dvc.OTAction.debug.InProcessRespServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RedisDocumentStoreTests {
+
+	private InProcessRespServer server;
+	private RedisDocumentStore store;
+
+	@BeforeEach
+	void start() throws Exception {
+		server = new InProcessRespServer(0);
+		store = new RedisDocumentStore("127.0.0.1", server.getPort(), 2000, "ot:", 256);
+	}
+
+	@AfterEach
+	void stop() throws Exception {
+		store.close();
+		server.close();
+	}
+
+	@Test
+	void snapshotAndTailRoundTrip() {
+		store.appendOperation("s", "d", 1, "[\"a\"]");
+		store.appendOperation("s", "d", 2, "[1,\"b\"]");
+		store.save(new DocumentSnapshot("s", "d", 2, "ab", List.of("[\"a\"]", "[1,\"b\"]")));
+		store.appendOperation("s", "d", 3, "[2,\"c\"]");
+
+		DocumentSnapshot snapshot = store.load("s", "d").orElseThrow();
+		assertEquals(2, snapshot.getRevision());
+		assertEquals("ab", snapshot.getContent());
+		assertEquals(List.of("[\"a\"]", "[1,\"b\"]"), snapshot.getHistory());
+		assertEquals(List.of("[2,\"c\"]"), store.readOperations("s", "d", 2));
+		assertTrue(store.load("s", "other").isEmpty());
+		assertEquals(List.of(new DocumentStore.StoredDocument("s", "d", store.listDocuments().get(0).lastModifiedMillis())),
+				store.listDocuments());
+	}
+
+	@Test
+	void appendIsRejectedWhenAnotherWriterGotThereFirst() {
+		RedisDocumentStore otherNode = new RedisDocumentStore("127.0.0.1", server.getPort(), 2000, "ot:", 256);
+		try {
+			store.appendOperation("s", "d", 1, "[\"mine\"]");
+			assertThrows(RevisionConflictException.class, () -> otherNode.appendOperation("s", "d", 1, "[\"theirs\"]"));
+			otherNode.appendOperation("s", "d", 2, "[4,\"theirs\"]");
+			assertEquals(List.of("[\"mine\"]", "[4,\"theirs\"]"), store.readOperations("s", "d", 0));
+			assertEquals(1, otherNode.getConflictCount());
+		} finally {
+			otherNode.close();
+		}
+	}
+
+	@Test
+	void retriedAppendThatMadeItIsNotAConflict() {
+		store.appendOperation("s", "d", 1, "[\"a\"]");
+		store.appendOperation("s", "d", 2, "[1,\"b\"]");
+		// the reply to revision 2 was lost and the pipeline sends it again
+		store.appendOperation("s", "d", 2, "[1,\"b\"]");
+		assertThrows(RevisionConflictException.class, () -> store.appendOperation("s", "d", 2, "[1,\"c\"]"));
+		assertEquals(List.of("[\"a\"]", "[1,\"b\"]"), store.readOperations("s", "d", 0));
+		assertEquals(1, store.getConflictCount());
+	}
+
+	@Test
+	void snapshotNeverGetsAheadOfItsHistory() {
+		// Redis has never seen this document: the history goes in first, then the snapshot
+		store.save(new DocumentSnapshot("s", "new", 2, "ab", List.of("[\"a\"]", "[1,\"b\"]")));
+		assertEquals(List.of("[\"a\"]", "[1,\"b\"]"), store.load("s", "new").orElseThrow().getHistory());
+
+		// another node's history won, a snapshot of ours would not match it
+		store.appendOperation("s", "d", 1, "[\"theirs\"]");
+		assertThrows(RevisionConflictException.class,
+				() -> store.save(new DocumentSnapshot("s", "d", 2, "ab", List.of("[\"a\"]", "[1,\"b\"]"))));
+		assertTrue(store.load("s", "d").isEmpty());
+		assertEquals(List.of("[\"theirs\"]"), store.readOperations("s", "d", 0));
+	}
+
+	@Test
+	void concurrentAppendsArePipelinedAndStayInOrder() throws Exception {
+		int documents = 16;
+		int ops = 500;
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int d = 0; d < documents; d++) {
+			String documentId = "doc-" + d;
+			futures.add(executor.submit(() -> {
+				for (int rev = 1; rev <= ops; rev++) {
+					store.appendOperation("s", documentId, rev, "[" + rev + "]");
+				}
+			}));
+		}
+		for (Future<?> future : futures) {
+			future.get();
+		}
+		executor.shutdown();
+
+		for (int d = 0; d < documents; d++) {
+			List<String> history = store.readOperations("s", "doc-" + d, 0);
+			assertEquals(ops, history.size());
+			for (int rev = 1; rev <= ops; rev++) {
+				assertEquals("[" + rev + "]", history.get(rev - 1));
+			}
+		}
+		assertEquals((long) documents * ops, store.getAppendCount());
+		assertTrue(store.getAppendRoundTripCount() < store.getAppendCount());
+	}
+
+	@Test
+	void scriptsAreReloadedAfterAFlush() {
+		store.appendOperation("s", "d", 1, "[\"a\"]");
+		server.flushScripts();
+		store.appendOperation("s", "d", 2, "[1,\"b\"]");
+		server.flushScripts();
+		store.save(new DocumentSnapshot("s", "d", 2, "ab", List.of("[\"a\"]", "[1,\"b\"]")));
+		assertEquals("ab", store.load("s", "d").orElseThrow().getContent());
+	}
+}
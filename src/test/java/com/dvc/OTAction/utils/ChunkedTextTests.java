@@ -0,0 +1,143 @@
+package com.dvc.OTAction.utils;
+
+import com.dvc.OTAction.dto.TextOperation;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkedTextTests {
+
+	@Test
+	void applyMatchesStringApplyAcrossChunks() {
+		SplittableRandom random = new SplittableRandom(31);
+		for (int run = 0; run < 10; run++) {
+			String expected = randomText(random, random.nextInt(4 * ChunkedText.MAX_CHUNK));
+			ChunkedText text = ChunkedText.of(expected);
+			for (int i = 0; i < 200; i++) {
+				TextOperation operation = randomOperation(random, expected.length());
+				expected = OTUtils.apply(expected, operation);
+				text = text.apply(operation);
+
+				assertEquals(expected, text.toString());
+				assertEquals(expected.length(), text.length());
+				assertEquals(ChunkedText.of(expected).hash(), text.hash(), "hash must not depend on the chunking");
+				assertChunkSizes(text);
+			}
+		}
+	}
+
+	@Test
+	void typingAtTheEndKeepsChunksBounded() {
+		ChunkedText text = ChunkedText.of("x".repeat(ChunkedText.MAX_CHUNK + 1));
+		StringBuilder expected = new StringBuilder(text.toString());
+		for (int i = 0; i < ChunkedText.MAX_CHUNK; i++) {
+			text = text.apply(new TextOperation().retain(text.length()).insert("y"));
+			expected.append('y');
+		}
+		assertEquals(expected.toString(), text.toString());
+		assertChunkSizes(text);
+		assertTrue(text.chunkCount() <= text.length() / ChunkedText.MIN_CHUNK);
+	}
+
+	@Test
+	void substringMatchesString() {
+		SplittableRandom random = new SplittableRandom(32);
+		String expected = randomText(random, 5 * ChunkedText.MAX_CHUNK);
+		ChunkedText text = ChunkedText.of(expected);
+		assertTrue(text.chunkCount() > 1);
+		for (int i = 0; i < 2000; i++) {
+			int from = random.nextInt(expected.length() + 1);
+			int to = from + random.nextInt(expected.length() - from + 1);
+			assertEquals(expected.substring(from, to), text.substring(from, to));
+		}
+		assertEquals("", ChunkedText.empty().substring(0, 0));
+	}
+
+	@Test
+	void lineIndexMatchesString() {
+		SplittableRandom random = new SplittableRandom(33);
+		List<String> documents = List.of("", "\n", "abc", "abc\n", "\n\nx\n",
+				// one long line across several chunks, then newlines as the last / first character of a chunk
+				"x".repeat(3 * ChunkedText.MAX_CHUNK) + "\nend",
+				"y".repeat(ChunkedText.TARGET_CHUNK - 1) + "\n" + "z".repeat(ChunkedText.MAX_CHUNK) + "\n",
+				"y".repeat(ChunkedText.TARGET_CHUNK) + "\n" + "z".repeat(ChunkedText.MAX_CHUNK),
+				randomText(random, 6 * ChunkedText.MAX_CHUNK));
+		for (String document : documents) {
+			ChunkedText text = ChunkedText.of(document);
+			List<Integer> lineStarts = new ArrayList<>();
+			lineStarts.add(0);
+			for (int i = 0; i < document.length(); i++) {
+				if (document.charAt(i) == '\n') {
+					lineStarts.add(i + 1);
+				}
+			}
+			assertEquals(lineStarts.size(), text.lineCount());
+			for (int line = 0; line < lineStarts.size(); line++) {
+				assertEquals(lineStarts.get(line), text.lineStart(line), "start of line " + line);
+			}
+			int line = 0;
+			for (int offset = 0; offset <= document.length(); offset++) {
+				while (line + 1 < lineStarts.size() && lineStarts.get(line + 1) <= offset) {
+					line++;
+				}
+				assertEquals(line, text.lineOf(offset), "line of offset " + offset);
+			}
+			assertThrows(IndexOutOfBoundsException.class, () -> text.lineStart(-1));
+			assertThrows(IndexOutOfBoundsException.class, () -> text.lineStart(lineStarts.size()));
+			assertThrows(IndexOutOfBoundsException.class, () -> text.lineOf(-1));
+			assertThrows(IndexOutOfBoundsException.class, () -> text.lineOf(document.length() + 1));
+		}
+	}
+
+	private static void assertChunkSizes(ChunkedText text) {
+		List<String> chunks = text.chunks();
+		for (String chunk : chunks) {
+			assertTrue(chunk.length() <= ChunkedText.MAX_CHUNK, "chunk of " + chunk.length());
+			assertTrue(chunks.size() == 1 || chunk.length() >= ChunkedText.MIN_CHUNK,
+					"chunk of " + chunk.length() + " among " + chunks.size());
+		}
+	}
+
+	/**
+	 * Mostly keystrokes and small edits, sometimes pastes and deletions larger than a chunk.
+	 */
+	private static TextOperation randomOperation(SplittableRandom random, int length) {
+		TextOperation operation = new TextOperation();
+		int position = 0;
+		int components = 1 + random.nextInt(4);
+		for (int c = 0; c < components && position < length; c++) {
+			int retain = random.nextInt(length - position + 1);
+			operation.retain(retain);
+			position += retain;
+			boolean large = random.nextInt(10) == 0;
+			if (random.nextBoolean()) {
+				operation.insert(randomText(random, 1 + random.nextInt(large ? 3 * ChunkedText.MAX_CHUNK : 20)));
+			}
+			if (random.nextBoolean() && position < length) {
+				int delete = 1 + random.nextInt(Math.min(length - position, large ? 3 * ChunkedText.MAX_CHUNK : 20));
+				operation.delete(delete);
+				position += delete;
+			}
+		}
+		if (random.nextInt(5) == 0) {
+			operation.insert(randomText(random, 1 + random.nextInt(5)));
+		}
+		operation.retain(length - position);
+		return operation;
+	}
+
+	private static String randomText(SplittableRandom random, int length) {
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append(random.nextInt(30) == 0 ? '\n' : (char) ('a' + random.nextInt(26)));
+		}
+		return sb.toString();
+	}
+
+}
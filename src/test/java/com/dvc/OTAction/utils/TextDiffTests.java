@@ -0,0 +1,60 @@
+package com.dvc.OTAction.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class TextDiffTests {
+
+	private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+
+	@Test
+	void diffIsCorrectAndMinimal() {
+		SplittableRandom random = new SplittableRandom(7);
+		for (int i = 0; i < 5000; i++) {
+			String a = randomString(random, random.nextInt(40));
+			String b = randomString(random, random.nextInt(40));
+			TextDiff diff = TextDiff.compute(a, b, 1000, TIMEOUT);
+			assertEquals(b, OTUtils.apply(a, diff.getOperation()), a + " -> " + b);
+			assertFalse(diff.isApproximate());
+			assertEquals(a.length() + b.length() - 2 * longestCommonSubsequence(a, b),
+					diff.getInserted() + diff.getDeleted(), a + " -> " + b);
+		}
+	}
+
+	@Test
+	void overBudgetDiffIsStillCorrect() {
+		SplittableRandom random = new SplittableRandom(11);
+		for (int i = 0; i < 1000; i++) {
+			String a = randomString(random, random.nextInt(200));
+			String b = randomString(random, random.nextInt(200));
+			TextDiff diff = TextDiff.compute(a, b, 2, TIMEOUT);
+			assertEquals(b, OTUtils.apply(a, diff.getOperation()), a + " -> " + b);
+		}
+	}
+
+	private static String randomString(SplittableRandom random, int length) {
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			sb.append("abc".charAt(random.nextInt(3)));
+		}
+		return sb.toString();
+	}
+
+	private static int longestCommonSubsequence(String a, String b) {
+		int[][] table = new int[a.length() + 1][b.length() + 1];
+		for (int i = 1; i <= a.length(); i++) {
+			for (int j = 1; j <= b.length(); j++) {
+				table[i][j] = a.charAt(i - 1) == b.charAt(j - 1)
+						? table[i - 1][j - 1] + 1
+						: Math.max(table[i - 1][j], table[i][j - 1]);
+			}
+		}
+		return table[a.length()][b.length()];
+	}
+
+}